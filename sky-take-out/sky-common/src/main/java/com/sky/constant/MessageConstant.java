@@ -24,5 +24,15 @@ public class MessageConstant {
     public static final String DISH_BE_RELATED_BY_SETMEAL = "当前菜品关联了套餐,不能删除";
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String ORDER_PAY_TIMEOUT = "支付超时，自动取消";
+    public static final String SERVICE_BUSY = "服务繁忙，请稍后再试";
+    public static final String DELIVERY_CHECK_UNAVAILABLE = "暂时无法校验配送范围，请稍后再试";
+    public static final String EXPORT_BUSY = "导出任务过多，请稍后再试";
+    public static final String EXPORT_TYPE_INVALID = "导出类型不正确";
+    public static final String EXPORT_RANGE_INVALID = "导出时间范围不正确";
+    public static final String EXPORT_JOB_NOT_FOUND = "导出任务不存在或已过期";
+    public static final String EXPORT_JOB_NOT_READY = "导出文件尚未生成";
+    public static final String REPORT_GRANULARITY_INVALID = "统计粒度不正确";
+    public static final String REPORT_RANGE_INVALID = "统计时间范围不正确";
 
 }
@@ -0,0 +1,31 @@
+package com.sky.constant;
+
+/**
+ * WebSocket推送相关常量
+ */
+public class WebSocketConstant {
+
+    //主题：管理端（商家）
+    public static final String TOPIC_ADMIN = "role:admin";
+
+    //主题：工作台实时指标，管理端打开工作台时订阅
+    public static final String TOPIC_DASHBOARD = "dashboard";
+
+    //主题前缀：指定店铺
+    public static final String TOPIC_SHOP_PREFIX = "shop:";
+
+    //主题前缀：指定客户端，每个客户端连接后自动订阅
+    public static final String TOPIC_SID_PREFIX = "sid:";
+
+    //消息类型：来单提醒
+    public static final Integer TYPE_NEW_ORDER = 1;
+
+    //消息类型：客户催单
+    public static final Integer TYPE_REMINDER = 2;
+
+    //消息类型：工作台实时指标增量
+    public static final Integer TYPE_DASHBOARD = 3;
+
+    //消息类型：重连补发不完整，客户端需要重新查询订单列表
+    public static final Integer TYPE_RESYNC = 9;
+}
@@ -4,6 +4,9 @@ public class BaseContext {
 
     public static ThreadLocal<Long> threadLocal = new ThreadLocal<>();
 
+    //当前微信用户的openid，来自用户端令牌
+    public static ThreadLocal<String> openidThreadLocal = new ThreadLocal<>();
+
     public static void setCurrentId(Long id) {
         threadLocal.set(id);
     }
@@ -16,4 +19,16 @@ public class BaseContext {
         threadLocal.remove();
     }
 
+    public static void setCurrentOpenid(String openid) {
+        openidThreadLocal.set(openid);
+    }
+
+    public static String getCurrentOpenid() {
+        return openidThreadLocal.get();
+    }
+
+    public static void removeCurrentOpenid() {
+        openidThreadLocal.remove();
+    }
+
 }
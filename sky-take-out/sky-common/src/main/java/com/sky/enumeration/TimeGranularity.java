@@ -0,0 +1,85 @@
+package com.sky.enumeration;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * 统计时间粒度
+ */
+public enum TimeGranularity {
+
+    /**
+     * 按小时
+     */
+    HOUR,
+
+    /**
+     * 按天
+     */
+    DAY,
+
+    /**
+     * 按周，每周从周一开始
+     */
+    WEEK,
+
+    /**
+     * 按月
+     */
+    MONTH;
+
+    /**
+     * 时间所在区间的开始时间
+     * @param time
+     * @return
+     */
+    public LocalDateTime truncate(LocalDateTime time) {
+        switch (this) {
+            case HOUR:
+                return time.truncatedTo(ChronoUnit.HOURS);
+            case DAY:
+                return time.toLocalDate().atStartOfDay();
+            case WEEK:
+                return time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            default:
+                return time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        }
+    }
+
+    /**
+     * 下一个区间的开始时间
+     * @param bucket 区间的开始时间
+     * @return
+     */
+    public LocalDateTime next(LocalDateTime bucket) {
+        switch (this) {
+            case HOUR:
+                return bucket.plusHours(1);
+            case DAY:
+                return bucket.plusDays(1);
+            case WEEK:
+                return bucket.plusWeeks(1);
+            default:
+                return bucket.plusMonths(1);
+        }
+    }
+
+    /**
+     * 根据名称获取粒度，不区分大小写，为空时按天
+     * @param name
+     * @return 名称不正确时返回null
+     */
+    public static TimeGranularity of(String name) {
+        if (name == null || name.isEmpty()) {
+            return DAY;
+        }
+        for (TimeGranularity granularity : values()) {
+            if (granularity.name().equalsIgnoreCase(name)) {
+                return granularity;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 外部服务不可用（熔断、并发数已满或超出时间预算）
+ */
+public class DependencyUnavailableException extends BaseException {
+
+    public DependencyUnavailableException(String msg) {
+        super(msg);
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.sky.exception;
+
+/**
+ * 报表导出异常
+ */
+public class ExportJobException extends BaseException {
+
+    public ExportJobException(String msg) {
+        super(msg);
+    }
+
+}
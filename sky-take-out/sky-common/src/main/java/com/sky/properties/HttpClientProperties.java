@@ -0,0 +1,21 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.http")
+@Data
+public class HttpClientProperties {
+
+    private int maxTotal = 200; //连接池最大连接数
+    private int maxPerRoute = 50; //每个路由（域名）最大连接数
+    private int connectTimeout = 2000; //建立连接超时时间（毫秒）
+    private int connectionRequestTimeout = 1000; //从连接池获取连接的超时时间（毫秒）
+    private int socketTimeout = 5000; //读取响应超时时间（毫秒）
+    private long keepAlive = 30000; //服务端未指定Keep-Alive时连接的保持时间（毫秒）
+    private long idleTimeout = 60000; //空闲连接超过该时间（毫秒）后被回收
+    private int ioThreads = Runtime.getRuntime().availableProcessors(); //异步客户端的IO线程数
+
+}
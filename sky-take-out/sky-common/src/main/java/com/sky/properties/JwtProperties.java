@@ -23,4 +23,16 @@ public class JwtProperties {
     private long userTtl;
     private String userTokenName;
 
+    /**
+     * 已校验令牌的缓存容量，管理端、用户端分别缓存
+     */
+    private int tokenCacheSize = 10000;
+
+    /**
+     * 令牌吊销配置
+     */
+    private String revocationKey = "jwt:revoked"; //吊销记录（hash），field为主体（如empId:1），value为吊销时间戳，之前签发的令牌失效
+    private String revocationChannel = "jwt:revoked"; //吊销通知频道，各节点收到后更新本地的吊销记录
+    private long revocationSyncInterval = 60000; //定期从redis全量同步吊销记录的间隔（毫秒），弥补丢失的通知
+
 }
@@ -0,0 +1,19 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.refund")
+@Data
+public class RefundProperties {
+
+    private int workerThreads = 4; //同时向微信支付发起退款请求的最大并发数
+    private int batchSize = 20; //每次拉取的到期任务数
+    private int maxAttempts = 8; //最大尝试次数，超过后任务标记为失败
+    private long initialBackoff = 10000; //首次重试间隔（毫秒），之后按2倍递增
+    private long maxBackoff = 3600000; //最大重试间隔（毫秒）
+    private long processingTimeout = 300000; //任务处于处理中超过该时间（毫秒）视为工作线程异常，重新入队
+
+}
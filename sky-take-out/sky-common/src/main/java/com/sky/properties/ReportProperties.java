@@ -0,0 +1,57 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.report")
+@Data
+public class ReportProperties {
+
+    /**
+     * 每日营业数据配置
+     */
+    private int mutableDays = 7; //最近多少天（不含今天）的数据仍可能变化，每晚按原始数据修正，不进入缓存
+    private String dailyCacheKey = "report:daily:"; //已结束日期的每日汇总数据缓存，key为前缀加日期
+    private String dishSalesCacheKey = "report:dish-sales:"; //已结束日期的每日商品销量缓存，key为前缀加日期
+    private long dailyCacheTtl = 86400000; //每天数据的缓存时间（毫秒），误写入的旧数据最多保留这么久
+    private long dailyCacheEvictDelay = 1000; //订单状态变更提交后，延迟多久（毫秒）再次清除缓存
+
+    /**
+     * 分时统计配置
+     */
+    private int timeSeriesMaxBuckets = 10000; //单次分时统计的最大区间数，例如按小时统计一年约8800个区间
+
+    /**
+     * 订单分析配置
+     */
+    private boolean analyticsEnabled = false; //是否在内存中保存订单数据用于分析，关闭时直接查询数据库
+    private int analyticsDays = 365; //内存中保存最近多少天（含今天）的订单
+    private int analyticsTopDishes = 20; //商品分析返回的商品数
+
+    /**
+     * 商品热度配置
+     */
+    private int popularDays = 30; //按最近多少天（含今天）的销量计算热度
+    private long popularRefreshInterval = 60000; //热度在本地保存的时间（毫秒），到期后重新统计
+
+    /**
+     * 工作台配置
+     */
+    private long workspaceQueryTimeout = 2000; //工作台统计查询的截止时间（毫秒），超时的数据返回默认值
+    private int dashboardMinutes = 60; //实时指标保留的分钟数
+    private String dashboardKeyPrefix = "dashboard:"; //每分钟实时指标在redis中的key前缀，加上分钟数为完整的key
+    private long dashboardPushInterval = 3000; //实时指标增量的推送间隔（毫秒）
+
+    /**
+     * 导出任务配置
+     */
+    private String exportDir = System.getProperty("java.io.tmpdir") + "/sky-export"; //导出文件存放目录，集群部署时必须配置为各节点共享的目录
+    private String exportJobKeyPrefix = "export:job:"; //导出任务信息在redis中的key前缀，加上下载凭证为完整的key
+    private int exportWorkers = 2; //导出工作线程数
+    private int exportQueueCapacity = 20; //排队等待的导出任务数上限，超出时拒绝提交
+    private long exportRetention = 86400000; //导出文件保留时间（毫秒），过期后删除
+    private int exportMaxDays = 366; //单次导出的最大天数
+
+}
@@ -0,0 +1,33 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.resilience")
+@Data
+public class ResilienceProperties {
+
+    /**
+     * 熔断器配置，每个外部依赖（按域名区分）各自一个熔断器
+     */
+    private int windowSize = 20; //统计最近多少次调用
+    private int minimumCalls = 10; //窗口内调用次数达到该值后才计算失败率
+    private int failureRateThreshold = 50; //失败率（百分比）达到该值时熔断
+    private long slowCallThreshold = 3000; //调用耗时超过该值（毫秒）视为失败
+    private long openDuration = 30000; //熔断持续时间（毫秒），之后放行一次试探调用
+
+    /**
+     * 舱壁配置，限制每个外部依赖同时占用的线程数
+     */
+    private int maxConcurrentCalls = 20;
+
+    /**
+     * 时间预算（毫秒），一次业务操作中对外部服务的所有调用总耗时上限
+     */
+    private long mapTimeBudget = 3000; //下单时配送范围校验
+    private long loginTimeBudget = 3000; //微信登录
+    private long payTimeBudget = 5000; //单次调用微信支付接口
+
+}
@@ -20,4 +20,11 @@ public class WeChatProperties {
     private String notifyUrl; //支付成功的回调地址
     private String refundNotifyUrl; //退款成功的回调地址
 
+    private int maxConnTotal = 50; //连接池最大连接数
+    private int maxConnPerRoute = 20; //每个路由（域名）最大连接数
+    private int connectTimeout = 3000; //建立连接超时时间（毫秒）
+    private int socketTimeout = 10000; //读取响应超时时间（毫秒）
+    private long keyReloadCheckInterval = 60000; //检查私钥、平台证书文件是否变更的间隔（毫秒）
+    private int identityCacheSize = 10000; //本地缓存的用户身份（openid与用户id的对应关系）数量
+
 }
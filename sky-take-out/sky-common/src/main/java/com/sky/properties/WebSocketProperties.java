@@ -0,0 +1,43 @@
+package com.sky.properties;
+
+import com.sky.constant.WebSocketConstant;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    private int sendQueueCapacity = 256; //每个会话待发送消息队列的容量，队列满时丢弃最早的消息
+    private long sendTimeout = 10000; //单条消息发送超过该时间（毫秒）视为慢客户端，断开连接
+
+    /**
+     * 集群配置，多个节点之间通过redis发布订阅转发消息
+     */
+    private String broadcastChannel = "ws:broadcast"; //群发消息频道，所有节点订阅
+    private String nodeChannelPrefix = "ws:node:"; //节点消息频道前缀，每个节点订阅自己的频道，用于定向发送
+    private String sessionDirectoryKey = "ws:sessions"; //会话目录（hash），记录每个客户端sid所在的节点
+
+    /**
+     * 主题订阅配置
+     */
+    private List<String> defaultTopics = Collections.singletonList(WebSocketConstant.TOPIC_ADMIN); //连接时未指定主题的客户端默认订阅的主题
+    private List<String> adminTopics = Arrays.asList(WebSocketConstant.TOPIC_ADMIN, WebSocketConstant.TOPIC_DASHBOARD,
+            WebSocketConstant.TOPIC_SHOP_PREFIX); //只有连接时携带有效管理端令牌的客户端可以订阅的主题，以这些值开头的主题都受限
+    private long coalesceWindow = 10000; //相同合并键的消息在该时间（毫秒）内只推送一次
+
+    /**
+     * 心跳和重连补发配置
+     */
+    private long heartbeatInterval = 30000; //向客户端发送ping的间隔（毫秒）
+    private long idleTimeout = 90000; //超过该时间（毫秒）未收到客户端任何消息（包括pong）时断开连接
+    private int replayCapacity = 200; //每个主题保留最近多少条消息用于重连补发
+    private String seqKey = "ws:seq"; //主题消息序号计数器，集群内共享
+
+}
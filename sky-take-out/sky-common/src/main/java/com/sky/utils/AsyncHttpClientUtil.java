@@ -0,0 +1,216 @@
+package com.sky.utils;
+
+import com.sky.exception.DependencyUnavailableException;
+import com.sky.properties.HttpClientProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 异步Http工具类
+ * 基于NIO事件循环发送请求，等待响应期间不占用调用线程，结果通过CompletableFuture返回
+ * 回调在IO线程中执行，后续的阻塞操作（如数据库访问）需切换到业务线程池
+ */
+@Slf4j
+public class AsyncHttpClientUtil {
+
+    private static volatile CloseableHttpAsyncClient httpClient;
+    private static volatile ScheduledExecutorService evictor;
+
+    /**
+     * 根据配置重新创建共享的异步客户端，应用启动时调用
+     * @param properties
+     */
+    public static synchronized void configure(HttpClientProperties properties) {
+        CloseableHttpAsyncClient oldClient = httpClient;
+        ScheduledExecutorService oldEvictor = evictor;
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(properties.getIoThreads())
+                .setConnectTimeout(properties.getConnectTimeout())
+                .setSoTimeout(properties.getSocketTimeout())
+                .build();
+        PoolingNHttpClientConnectionManager manager;
+        try {
+            manager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("创建异步http连接池失败", e);
+        }
+        manager.setMaxTotal(properties.getMaxTotal());
+        manager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(properties.getConnectTimeout())
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeout())
+                .setSocketTimeout(properties.getSocketTimeout())
+                .build();
+        long keepAlive = properties.getKeepAlive();
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(manager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? duration : keepAlive;
+                })
+                .build();
+        client.start();
+
+        //异步连接池没有内置的空闲连接回收，由单独的守护线程定期清理
+        long idleTimeout = properties.getIdleTimeout();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "async-http-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            manager.closeExpiredConnections();
+            manager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+
+        httpClient = client;
+        evictor = scheduler;
+
+        closeQuietly(oldClient, oldEvictor);
+    }
+
+    /**
+     * 关闭共享的异步客户端，应用停止时调用
+     */
+    public static synchronized void shutdown() {
+        closeQuietly(httpClient, evictor);
+        httpClient = null;
+        evictor = null;
+    }
+
+    private static CloseableHttpAsyncClient getClient() {
+        CloseableHttpAsyncClient client = httpClient;
+        if (client == null) {
+            synchronized (AsyncHttpClientUtil.class) {
+                if (httpClient == null) {
+                    configure(new HttpClientProperties());
+                }
+                client = httpClient;
+            }
+        }
+        return client;
+    }
+
+    private static void closeQuietly(CloseableHttpAsyncClient client, ScheduledExecutorService scheduler) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        try {
+            if (client != null) {
+                client.close();
+            }
+        } catch (IOException e) {
+            log.warn("关闭异步http客户端失败", e);
+        }
+    }
+
+    /**
+     * 异步发送GET方式请求
+     * 响应状态为200时返回响应内容，否则返回空字符串；网络异常、超时时future以异常结束
+     * @param url
+     * @param paramMap
+     * @return
+     */
+    public static CompletableFuture<String> doGet(String url, Map<String, String> paramMap) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        HttpGet httpGet;
+        try {
+            URIBuilder builder = new URIBuilder(url);
+            if (paramMap != null) {
+                for (String key : paramMap.keySet()) {
+                    builder.addParameter(key, paramMap.get(key));
+                }
+            }
+            httpGet = new HttpGet(builder.build());
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        //经过该域名的熔断器和舱壁，依赖不可用时立即失败
+        String host = httpGet.getURI().getHost();
+        DependencyGuard guard = DependencyGuard.of(host);
+        try {
+            guard.acquire();
+        } catch (DependencyUnavailableException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        long start = System.nanoTime();
+        //许可只能释放一次：提交请求时同步抛出的异常和回调都可能结束这次调用
+        AtomicBoolean finished = new AtomicBoolean();
+        FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                finish(statusCode >= 500);
+                try {
+                    HttpEntity entity = response.getEntity();
+                    if (statusCode != 200 || entity == null) {
+                        EntityUtils.consume(entity);
+                        future.complete("");
+                        return;
+                    }
+                    future.complete(EntityUtils.toString(entity, "UTF-8"));
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                finish(true);
+                log.error("异步GET请求失败：{}", url, e);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                finish(true);
+                future.cancel(false);
+            }
+
+            private void finish(boolean failure) {
+                if (!finished.compareAndSet(false, true)) {
+                    return;
+                }
+                long elapsedNanos = System.nanoTime() - start;
+                HttpClientUtil.record(host, elapsedNanos, failure);
+                guard.complete(elapsedNanos, failure);
+            }
+        };
+        try {
+            getClient().execute(httpGet, callback);
+        } catch (Exception e) {
+            //客户端已关闭等原因导致请求未能提交，释放许可
+            callback.failed(e);
+        }
+        return future;
+    }
+
+}
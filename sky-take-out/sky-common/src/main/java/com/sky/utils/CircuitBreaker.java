@@ -0,0 +1,143 @@
+package com.sky.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 熔断器
+ * 关闭状态下统计最近windowSize次调用的失败率，超过阈值后打开，打开期间直接拒绝调用；
+ * 打开openDuration毫秒后进入半开状态，只放行一次试探调用，成功则关闭，失败则重新打开
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openDuration;
+
+    //最近调用结果的环形窗口，true表示失败
+    private final boolean[] window;
+    private int index;
+    private int calls;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long openCount;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, long openDuration) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.window = new boolean[windowSize];
+    }
+
+    /**
+     * 判断当前是否允许调用
+     * @param now 当前时间戳（毫秒）
+     * @return
+     */
+    public synchronized boolean tryAcquire(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedAt < openDuration) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * 放弃已获得的调用许可（未实际发起调用）
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * 记录一次调用的结果
+     * @param failure 是否失败
+     * @param now 当前时间戳（毫秒）
+     */
+    public synchronized void onResult(boolean failure, long now) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (failure) {
+                open(now);
+            } else {
+                reset();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            //熔断前发出的调用，结果不再统计
+            return;
+        }
+
+        if (calls == windowSize) {
+            if (window[index]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[index] = failure;
+        if (failure) {
+            failures++;
+        }
+        index = (index + 1) % windowSize;
+
+        if (calls >= minimumCalls && failures * 100 >= failureRateThreshold * calls) {
+            open(now);
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        openCount++;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        index = 0;
+        calls = 0;
+        failures = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 熔断器当前状态的快照
+     * @return
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("state", state.name());
+        map.put("calls", calls);
+        map.put("failures", failures);
+        map.put("failureRate", calls == 0 ? 0 : failures * 100 / calls);
+        map.put("openCount", openCount);
+        return map;
+    }
+}
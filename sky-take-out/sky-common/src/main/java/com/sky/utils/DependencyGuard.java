@@ -0,0 +1,162 @@
+package com.sky.utils;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.DependencyUnavailableException;
+import com.sky.properties.ResilienceProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 外部依赖保护：每个依赖一个熔断器和一个舱壁（并发数上限）
+ * 依赖不可用或并发数已满时立即失败，不再占用线程等待超时，避免拖垮整个服务
+ *
+ * 用法：
+ *   DependencyGuard guard = DependencyGuard.of(name);
+ *   guard.acquire();
+ *   ...调用外部服务...
+ *   guard.complete(elapsedNanos, failure);
+ */
+@Slf4j
+public class DependencyGuard {
+
+    private static final Map<String, DependencyGuard> GUARDS = new ConcurrentHashMap<>();
+
+    private static volatile ResilienceProperties properties = new ResilienceProperties();
+
+    //时间预算到期后使future以异常结束
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dependency-budget-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final CircuitBreaker circuitBreaker;
+    private final Semaphore bulkhead;
+    private final int maxConcurrentCalls;
+    private final long slowCallNanos;
+    private final LongAdder rejected = new LongAdder();
+
+    private DependencyGuard(String name, ResilienceProperties properties) {
+        this.name = name;
+        this.circuitBreaker = new CircuitBreaker(properties.getWindowSize(), properties.getMinimumCalls(),
+                properties.getFailureRateThreshold(), properties.getOpenDuration());
+        this.maxConcurrentCalls = properties.getMaxConcurrentCalls();
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(properties.getSlowCallThreshold());
+    }
+
+    /**
+     * 设置熔断器和舱壁的配置，应用启动时调用，之后新建的依赖使用该配置
+     * @param resilienceProperties
+     */
+    public static void configure(ResilienceProperties resilienceProperties) {
+        properties = resilienceProperties;
+        GUARDS.clear();
+    }
+
+    /**
+     * 获取指定依赖的保护器，不存在时创建
+     * @param name 依赖名称，一般为域名
+     * @return
+     */
+    public static DependencyGuard of(String name) {
+        return GUARDS.computeIfAbsent(name, n -> new DependencyGuard(n, properties));
+    }
+
+    /**
+     * 获取调用许可，熔断打开或并发数已满时抛出DependencyUnavailableException
+     * 获取成功后必须调用complete
+     */
+    public void acquire() {
+        if (!bulkhead.tryAcquire()) {
+            rejected.increment();
+            log.warn("外部依赖{}并发数已满，拒绝调用", name);
+            throw new DependencyUnavailableException(MessageConstant.SERVICE_BUSY);
+        }
+        if (!circuitBreaker.tryAcquire(System.currentTimeMillis())) {
+            bulkhead.release();
+            rejected.increment();
+            throw new DependencyUnavailableException(MessageConstant.SERVICE_BUSY);
+        }
+    }
+
+    /**
+     * 记录调用结果并释放许可，耗时超过慢调用阈值的调用也视为失败
+     * @param elapsedNanos
+     * @param failure
+     */
+    public void complete(long elapsedNanos, boolean failure) {
+        bulkhead.release();
+        boolean slow = elapsedNanos > slowCallNanos;
+        CircuitBreaker.State before = circuitBreaker.getState();
+        circuitBreaker.onResult(failure || slow, System.currentTimeMillis());
+        CircuitBreaker.State after = circuitBreaker.getState();
+        if (before != after) {
+            log.warn("外部依赖{}熔断器状态变更：{} -> {}", name, before, after);
+        }
+    }
+
+    /**
+     * 为异步调用设置时间预算，到期未完成时以DependencyUnavailableException结束
+     * 已发出的请求不会被中断，由http客户端的超时配置兜底
+     * @param future
+     * @param budgetMillis
+     * @param <T>
+     * @return
+     */
+    public static <T> CompletableFuture<T> withBudget(CompletableFuture<T> future, long budgetMillis) {
+        if (future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer = TIMER.schedule(
+                () -> result.completeExceptionally(new DependencyUnavailableException(MessageConstant.SERVICE_BUSY)),
+                budgetMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((value, ex) -> {
+            timer.cancel(false);
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 为同步调用设置时间预算，到期未完成时执行中止操作（如中止http请求），调用结束后需取消返回的定时任务
+     * @param abort
+     * @param budgetMillis
+     * @return
+     */
+    public static ScheduledFuture<?> scheduleAbort(Runnable abort, long budgetMillis) {
+        return TIMER.schedule(abort, budgetMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 所有依赖的熔断器、舱壁状态
+     * @return
+     */
+    public static Map<String, Map<String, Object>> snapshotAll() {
+        Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+        GUARDS.forEach((name, guard) -> {
+            Map<String, Object> map = guard.circuitBreaker.snapshot();
+            map.put("inFlight", guard.maxConcurrentCalls - guard.bulkhead.availablePermits());
+            map.put("maxConcurrentCalls", guard.maxConcurrentCalls);
+            map.put("rejected", guard.rejected.sum());
+            metrics.put(name, map);
+        });
+        return metrics;
+    }
+}
@@ -1,32 +1,129 @@
 package com.sky.utils;
 
 import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.HttpClientProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Http工具类
+ * 所有请求共用一个基于连接池的客户端，复用长连接，避免每次请求重新建立TCP、TLS连接
  */
+@Slf4j
 public class HttpClientUtil {
 
     static final  int TIMEOUT_MSEC = 5 * 1000;
 
+    //共享的客户端及其连接池
+    private static volatile CloseableHttpClient httpClient;
+    private static volatile PoolingHttpClientConnectionManager connectionManager;
+
+    //默认的请求超时配置
+    private static volatile RequestConfig requestConfig = builderRequestConfig(TIMEOUT_MSEC, TIMEOUT_MSEC, TIMEOUT_MSEC);
+
+    //按域名统计的请求指标
+    private static final Map<String, HostStats> HOST_STATS = new ConcurrentHashMap<>();
+
+    /**
+     * 根据配置重新创建共享客户端，应用启动时调用
+     * @param properties
+     */
+    public static synchronized void configure(HttpClientProperties properties) {
+        CloseableHttpClient oldClient = httpClient;
+        PoolingHttpClientConnectionManager oldManager = connectionManager;
+
+        requestConfig = builderRequestConfig(properties.getConnectTimeout(),
+                properties.getConnectionRequestTimeout(),
+                properties.getSocketTimeout());
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(properties.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity(2000);
+        httpClient = buildClient(connectionManager, properties.getKeepAlive(), properties.getIdleTimeout());
+
+        closeQuietly(oldClient, oldManager);
+    }
+
+    /**
+     * 关闭共享客户端，应用停止时调用
+     */
+    public static synchronized void shutdown() {
+        closeQuietly(httpClient, connectionManager);
+        httpClient = null;
+        connectionManager = null;
+    }
+
+    /**
+     * 获取共享客户端，未配置时使用默认配置创建
+     * @return
+     */
+    private static CloseableHttpClient getClient() {
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (HttpClientUtil.class) {
+                if (httpClient == null) {
+                    configure(new HttpClientProperties());
+                }
+                client = httpClient;
+            }
+        }
+        return client;
+    }
+
+    private static CloseableHttpClient buildClient(PoolingHttpClientConnectionManager manager, long keepAlive, long idleTimeout) {
+        return HttpClients.custom()
+                .setConnectionManager(manager)
+                .setDefaultRequestConfig(requestConfig)
+                //服务端未通过Keep-Alive响应头指定保持时间时，使用配置的默认值
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration > 0 ? duration : keepAlive;
+                })
+                //后台线程定期回收过期和空闲的连接
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private static void closeQuietly(CloseableHttpClient client, PoolingHttpClientConnectionManager manager) {
+        try {
+            if (client != null) {
+                client.close();
+            }
+            if (manager != null) {
+                manager.shutdown();
+            }
+        } catch (IOException e) {
+            log.warn("关闭http客户端失败", e);
+        }
+    }
+
     /**
      * 发送GET方式请求
      * @param url
@@ -34,11 +131,7 @@ public class HttpClientUtil {
      * @return
      */
     public static String doGet(String url,Map<String,String> paramMap){
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-
         String result = "";
-        CloseableHttpResponse response = null;
 
         try{
             URIBuilder builder = new URIBuilder(url);
@@ -51,23 +144,12 @@ public class HttpClientUtil {
 
             //创建GET请求
             HttpGet httpGet = new HttpGet(uri);
+            httpGet.setConfig(requestConfig);
 
-            //发送请求
-            response = httpClient.execute(httpGet);
-
-            //判断响应状态
-            if(response.getStatusLine().getStatusCode() == 200){
-                result = EntityUtils.toString(response.getEntity(),"UTF-8");
-            }
+            //发送请求，只有响应状态为200时才读取响应内容
+            result = execute(httpGet, true);
         }catch (Exception e){
-            e.printStackTrace();
-        }finally {
-            try {
-                response.close();
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            log.error("GET请求失败：{}", url, e);
         }
 
         return result;
@@ -81,43 +163,24 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
-        String resultString = "";
+        // 创建Http Post请求
+        HttpPost httpPost = new HttpPost(url);
 
-        try {
-            // 创建Http Post请求
-            HttpPost httpPost = new HttpPost(url);
-
-            // 创建参数列表
-            if (paramMap != null) {
-                List<NameValuePair> paramList = new ArrayList();
-                for (Map.Entry<String, String> param : paramMap.entrySet()) {
-                    paramList.add(new BasicNameValuePair(param.getKey(), param.getValue()));
-                }
-                // 模拟表单
-                UrlEncodedFormEntity entity = new UrlEncodedFormEntity(paramList);
-                httpPost.setEntity(entity);
-            }
-
-            httpPost.setConfig(builderRequestConfig());
-
-            // 执行http请求
-            response = httpClient.execute(httpPost);
-
-            resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
-        } catch (Exception e) {
-            throw e;
-        } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        // 创建参数列表
+        if (paramMap != null) {
+            List<NameValuePair> paramList = new ArrayList();
+            for (Map.Entry<String, String> param : paramMap.entrySet()) {
+                paramList.add(new BasicNameValuePair(param.getKey(), param.getValue()));
             }
+            // 模拟表单
+            UrlEncodedFormEntity entity = new UrlEncodedFormEntity(paramList);
+            httpPost.setEntity(entity);
         }
 
-        return resultString;
+        httpPost.setConfig(requestConfig);
+
+        // 执行http请求
+        return execute(httpPost, false);
     }
 
     /**
@@ -128,52 +191,118 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost4Json(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
-        String resultString = "";
+        // 创建Http Post请求
+        HttpPost httpPost = new HttpPost(url);
 
-        try {
-            // 创建Http Post请求
-            HttpPost httpPost = new HttpPost(url);
-
-            if (paramMap != null) {
-                //构造json格式数据
-                JSONObject jsonObject = new JSONObject();
-                for (Map.Entry<String, String> param : paramMap.entrySet()) {
-                    jsonObject.put(param.getKey(),param.getValue());
-                }
-                StringEntity entity = new StringEntity(jsonObject.toString(),"utf-8");
-                //设置请求编码
-                entity.setContentEncoding("utf-8");
-                //设置数据类型
-                entity.setContentType("application/json");
-                httpPost.setEntity(entity);
+        if (paramMap != null) {
+            //构造json格式数据
+            JSONObject jsonObject = new JSONObject();
+            for (Map.Entry<String, String> param : paramMap.entrySet()) {
+                jsonObject.put(param.getKey(),param.getValue());
             }
+            StringEntity entity = new StringEntity(jsonObject.toString(),"utf-8");
+            //设置请求编码
+            entity.setContentEncoding("utf-8");
+            //设置数据类型
+            entity.setContentType("application/json");
+            httpPost.setEntity(entity);
+        }
 
-            httpPost.setConfig(builderRequestConfig());
+        httpPost.setConfig(requestConfig);
 
-            // 执行http请求
-            response = httpClient.execute(httpPost);
+        // 执行http请求
+        return execute(httpPost, false);
+    }
 
-            resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
-        } catch (Exception e) {
-            throw e;
-        } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * 执行请求并记录按域名统计的耗时和错误数
+     * 请求经过该域名的熔断器和舱壁，依赖不可用时抛出DependencyUnavailableException
+     * 响应体总是被完整读取或消费，连接才能归还连接池复用
+     * @param request
+     * @param onlyOk 为true时只读取状态码为200的响应内容
+     * @return
+     * @throws IOException
+     */
+    private static String execute(HttpRequestBase request, boolean onlyOk) throws IOException {
+        String host = request.getURI().getHost();
+        DependencyGuard guard = DependencyGuard.of(host);
+        guard.acquire();
+        long start = System.nanoTime();
+        boolean error = true;
+        try (CloseableHttpResponse response = getClient().execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            error = statusCode >= 500;
+
+            HttpEntity entity = response.getEntity();
+            if (onlyOk && statusCode != 200) {
+                EntityUtils.consume(entity);
+                return "";
             }
+            return entity == null ? "" : EntityUtils.toString(entity, "UTF-8");
+        } finally {
+            long elapsedNanos = System.nanoTime() - start;
+            record(host, elapsedNanos, error);
+            guard.complete(elapsedNanos, error);
         }
-
-        return resultString;
     }
-    private static RequestConfig builderRequestConfig() {
+
+    private static RequestConfig builderRequestConfig(int connectTimeout, int connectionRequestTimeout, int socketTimeout) {
         return RequestConfig.custom()
-                .setConnectTimeout(TIMEOUT_MSEC)
-                .setConnectionRequestTimeout(TIMEOUT_MSEC)
-                .setSocketTimeout(TIMEOUT_MSEC).build();
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .setSocketTimeout(socketTimeout).build();
+    }
+
+    /**
+     * 记录一次请求的指标
+     * @param host
+     * @param elapsedNanos
+     * @param error
+     */
+    static void record(String host, long elapsedNanos, boolean error) {
+        if (host == null) {
+            return;
+        }
+        HOST_STATS.computeIfAbsent(host, h -> new HostStats()).record(elapsedNanos, error);
+    }
+
+    /**
+     * 获取按域名统计的请求指标
+     * @return
+     */
+    public static Map<String, Map<String, Object>> getHostMetrics() {
+        Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+        HOST_STATS.forEach((host, stats) -> metrics.put(host, stats.snapshot()));
+        return metrics;
+    }
+
+    /**
+     * 单个域名的请求指标
+     */
+    private static class HostStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long elapsedNanos, boolean error) {
+            requests.increment();
+            if (error) {
+                errors.increment();
+            }
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+        }
+
+        Map<String, Object> snapshot() {
+            long count = requests.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("requests", count);
+            map.put("errors", errors.sum());
+            map.put("avgMillis", count == 0 ? 0 : totalNanos.sum() / count / 1000000.0);
+            map.put("maxMillis", maxNanos.get() / 1000000.0);
+            return map;
+        }
     }
 
 }
@@ -0,0 +1,92 @@
+package com.sky.utils;
+
+import io.jsonwebtoken.Claims;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 已校验jwt的缓存
+ * 同一令牌的后续请求直接使用缓存的解析结果，跳过签名校验和解析；令牌过期后缓存失效，重新解析时由JwtUtil判定过期
+ * 缓存的key为令牌的SHA-256摘要，内存中不保存令牌原文
+ * 缓存按key分为多个分段，每个分段是一个独立加锁的LRU，超过分段容量时淘汰该分段中最久未使用的令牌；
+ * 按访问顺序排列的LinkedHashMap在读取时也会修改链表，分段后并发请求只在命中同一分段时才互相等待
+ */
+public class JwtTokenCache {
+
+    //分段数，2的幂
+    private static final int SEGMENTS = 16;
+
+    private final String secretKey;
+
+    private final Map<String, Entry>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public JwtTokenCache(String secretKey, int maxSize) {
+        this.secretKey = secretKey;
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Map[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > segmentSize;
+                }
+            });
+        }
+    }
+
+    /**
+     * 校验并解析令牌，校验失败时抛出与JwtUtil.parseJWT相同的异常
+     * 返回的Claims在多个请求间共享，只能读取
+     * @param token
+     * @return
+     */
+    public Claims parse(String token) {
+        if (token == null || token.isEmpty()) {
+            //交给JwtUtil抛出异常
+            return JwtUtil.parseJWT(secretKey, token);
+        }
+        String key = hash(token);
+        Map<String, Entry> cache = segments[key.hashCode() & (SEGMENTS - 1)];
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            if (now < entry.expiresAt) {
+                return entry.claims;
+            }
+            cache.remove(key);
+        }
+
+        Claims claims = JwtUtil.parseJWT(secretKey, token);
+        //没有过期时间的令牌不缓存
+        if (claims.getExpiration() != null) {
+            cache.put(key, new Entry(claims, claims.getExpiration().getTime()));
+        }
+        return claims;
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final Claims claims;
+        private final long expiresAt;
+
+        Entry(Claims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
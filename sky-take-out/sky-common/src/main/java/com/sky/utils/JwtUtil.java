@@ -23,7 +23,8 @@ public class JwtUtil {
         SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.HS256;
 
         // 生成JWT的时间
-        long expMillis = System.currentTimeMillis() + ttlMillis;
+        long nowMillis = System.currentTimeMillis();
+        long expMillis = nowMillis + ttlMillis;
         Date exp = new Date(expMillis);
 
         // 设置jwt的body
@@ -32,6 +33,8 @@ public class JwtUtil {
                 .setClaims(claims)
                 // 设置签名使用的签名算法和签名使用的秘钥
                 .signWith(signatureAlgorithm, secretKey.getBytes(StandardCharsets.UTF_8))
+                // 设置签发时间，用于判断令牌是否在吊销之前签发
+                .setIssuedAt(new Date(nowMillis))
                 // 设置过期时间
                 .setExpiration(exp);
 
@@ -2,38 +2,49 @@ package com.sky.utils;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.sky.properties.ResilienceProperties;
 import com.sky.properties.WeChatProperties;
 import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
 import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 微信支付工具类
  */
 @Component
-public class WeChatPayUtil {
+@Slf4j
+public class WeChatPayUtil implements DisposableBean {
 
     //微信支付下单接口地址
     public static final String JSAPI = "https://api.mch.weixin.qq.com/v3/pay/transactions/jsapi";
@@ -41,34 +52,157 @@ public class WeChatPayUtil {
     //申请退款接口地址
     public static final String REFUNDS = "https://api.mch.weixin.qq.com/v3/refund/domestic/refunds";
 
+    //商户订单号查询订单接口地址
+    public static final String QUERY_BY_OUT_TRADE_NO = "https://api.mch.weixin.qq.com/v3/pay/transactions/out-trade-no/";
+
     @Autowired
     private WeChatProperties weChatProperties;
 
+    @Autowired
+    private ResilienceProperties resilienceProperties;
+
+    //连接池，私钥或证书变更重建客户端时继续复用
+    private volatile PoolingHttpClientConnectionManager connectionManager;
+
+    //连接池由多个客户端共享时，HttpClientBuilder不会启动空闲连接回收，由这里单独回收
+    private IdleConnectionEvictor connectionEvictor;
+
+    //自动签名、验签的客户端，全局只有一个
+    private volatile CloseableHttpClient httpClient;
+
+    //商户API私钥
+    private volatile PrivateKey merchantPrivateKey;
+
+    //私钥文件、平台证书文件的最后修改时间，用于判断是否需要重新加载
+    private long keyLastModified;
+    private long certLastModified;
+
+    //上一次检查文件是否变更的时间
+    private volatile long lastCheckTime;
+
+    //每个线程复用一个签名对象，避免每次调起支付都重新初始化
+    private final ThreadLocal<SignatureHolder> signatureHolder = new ThreadLocal<>();
+
     /**
      * 获取调用微信接口的客户端工具对象
      *
      * @return
      */
-    private CloseableHttpClient getClient() {
-        PrivateKey merchantPrivateKey = null;
-        try {
+    private CloseableHttpClient getClient() throws Exception {
+        reloadIfChanged();
+        return httpClient;
+    }
+
+    /**
+     * 首次使用或私钥、平台证书文件发生变更时，重新加载密钥并构造客户端
+     */
+    private void reloadIfChanged() throws Exception {
+        long now = System.currentTimeMillis();
+        if (httpClient != null && now - lastCheckTime < weChatProperties.getKeyReloadCheckInterval()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (httpClient != null && now - lastCheckTime < weChatProperties.getKeyReloadCheckInterval()) {
+                return;
+            }
+            lastCheckTime = now;
+
+            File keyFile = new File(weChatProperties.getPrivateKeyFilePath());
+            File certFile = new File(weChatProperties.getWeChatPayCertFilePath());
+            long keyModified = keyFile.lastModified();
+            long certModified = certFile.lastModified();
+            if (httpClient != null && keyModified == keyLastModified && certModified == certLastModified) {
+                return;
+            }
+
+            PrivateKey privateKey;
             //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
-            merchantPrivateKey = PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath())));
+            try (FileInputStream in = new FileInputStream(keyFile)) {
+                privateKey = PemUtil.loadPrivateKey(in);
+            }
+            X509Certificate x509Certificate;
             //加载平台证书文件
-            X509Certificate x509Certificate = PemUtil.loadCertificate(new FileInputStream(new File(weChatProperties.getWeChatPayCertFilePath())));
-            //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
-            List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
-
-            WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
-                    .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
-                    .withWechatPay(wechatPayCertificates);
-
-            // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
-            CloseableHttpClient httpClient = builder.build();
-            return httpClient;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
+            try (FileInputStream in = new FileInputStream(certFile)) {
+                x509Certificate = PemUtil.loadCertificate(in);
+            }
+
+            CloseableHttpClient oldClient = httpClient;
+            httpClient = buildClient(privateKey, x509Certificate);
+            merchantPrivateKey = privateKey;
+            keyLastModified = keyModified;
+            certLastModified = certModified;
+            log.info("微信支付商户私钥、平台证书加载完成");
+
+            if (oldClient != null) {
+                //连接池是共享的，关闭旧客户端不会影响正在使用连接池的请求
+                oldClient.close();
+            }
+        }
+    }
+
+    /**
+     * 构造基于连接池、长连接的微信支付客户端
+     *
+     * @param privateKey
+     * @param x509Certificate
+     * @return
+     */
+    private CloseableHttpClient buildClient(PrivateKey privateKey, X509Certificate x509Certificate) {
+        if (connectionManager == null) {
+            PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+            manager.setMaxTotal(weChatProperties.getMaxConnTotal());
+            manager.setDefaultMaxPerRoute(weChatProperties.getMaxConnPerRoute());
+            manager.setValidateAfterInactivity(2000);
+            connectionEvictor = new IdleConnectionEvictor(manager, 30, TimeUnit.SECONDS);
+            connectionEvictor.start();
+            connectionManager = manager;
+        }
+
+        //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
+        List<X509Certificate> wechatPayCertificates = Collections.singletonList(x509Certificate);
+
+        WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
+                .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), privateKey)
+                .withWechatPay(wechatPayCertificates);
+        builder.setConnectionManager(connectionManager);
+        builder.setConnectionManagerShared(true);
+        builder.setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE);
+        builder.setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(weChatProperties.getConnectTimeout())
+                .setConnectionRequestTimeout(weChatProperties.getConnectTimeout())
+                .setSocketTimeout(weChatProperties.getSocketTimeout())
+                .build());
+
+        // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
+        return builder.build();
+    }
+
+    /**
+     * 使用商户私钥进行SHA256withRSA签名
+     *
+     * @param message
+     * @return
+     */
+    private String sign(byte[] message) throws Exception {
+        reloadIfChanged();
+        PrivateKey privateKey = merchantPrivateKey;
+
+        SignatureHolder holder = signatureHolder.get();
+        if (holder == null || holder.privateKey != privateKey) {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(privateKey);
+            holder = new SignatureHolder(signature, privateKey);
+            signatureHolder.set(holder);
+        }
+
+        try {
+            holder.signature.update(message);
+            //sign()完成后签名对象会重置，可以直接用于下一次签名
+            return Base64.getEncoder().encodeToString(holder.signature.sign());
+        } catch (Exception e) {
+            signatureHolder.remove();
+            throw e;
         }
     }
 
@@ -80,22 +214,13 @@ public class WeChatPayUtil {
      * @return
      */
     private String post(String url, String body) throws Exception {
-        CloseableHttpClient httpClient = getClient();
-
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
         httpPost.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
         httpPost.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
         httpPost.setEntity(new StringEntity(body, "UTF-8"));
 
-        CloseableHttpResponse response = httpClient.execute(httpPost);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
-        }
+        return execute(httpPost);
     }
 
     /**
@@ -105,20 +230,34 @@ public class WeChatPayUtil {
      * @return
      */
     private String get(String url) throws Exception {
-        CloseableHttpClient httpClient = getClient();
-
         HttpGet httpGet = new HttpGet(url);
         httpGet.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
 
-        CloseableHttpResponse response = httpClient.execute(httpGet);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
+        return execute(httpGet);
+    }
+
+    /**
+     * 执行请求，经过熔断器和舱壁保护，微信支付接口变慢或不可用时快速失败，不占用线程等待超时
+     * 超出时间预算（含等待连接、多次读取）时中止请求，请求以异常结束
+     *
+     * @param request
+     * @return
+     */
+    private String execute(HttpRequestBase request) throws Exception {
+        DependencyGuard guard = DependencyGuard.of(request.getURI().getHost());
+        guard.acquire();
+        long start = System.nanoTime();
+        boolean failure = true;
+        ScheduledFuture<?> timer = DependencyGuard.scheduleAbort(request::abort, resilienceProperties.getPayTimeBudget());
+        //只关闭响应，连接归还连接池
+        try (CloseableHttpResponse response = getClient().execute(request)) {
+            failure = response.getStatusLine().getStatusCode() >= 500;
+            return EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
         } finally {
-            httpClient.close();
-            response.close();
+            timer.cancel(false);
+            guard.complete(System.nanoTime() - start, failure);
         }
     }
 
@@ -187,10 +326,7 @@ public class WeChatPayUtil {
             String signMessage = stringBuilder.toString();
             byte[] message = signMessage.getBytes();
 
-            Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath()))));
-            signature.update(message);
-            String packageSign = Base64.getEncoder().encodeToString(signature.sign());
+            String packageSign = sign(message);
 
             //构造数据给微信小程序，用于调起微信支付
             JSONObject jo = new JSONObject();
@@ -232,4 +368,53 @@ public class WeChatPayUtil {
         //调用申请退款接口
         return post(REFUNDS, body);
     }
+
+    /**
+     * 根据商户订单号查询支付订单
+     *
+     * @param outTradeNo 商户订单号
+     * @return
+     */
+    public String queryByOutTradeNo(String outTradeNo) throws Exception {
+        return get(QUERY_BY_OUT_TRADE_NO + outTradeNo + "?mchid=" + weChatProperties.getMchid());
+    }
+
+    /**
+     * 根据商户退款单号查询单笔退款
+     *
+     * @param outRefundNo 商户退款单号
+     * @return
+     */
+    public String queryRefund(String outRefundNo) throws Exception {
+        return get(REFUNDS + "/" + outRefundNo);
+    }
+
+    /**
+     * 关闭客户端和连接池
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (connectionEvictor != null) {
+            connectionEvictor.shutdown();
+        }
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
+    }
+
+    /**
+     * 线程内复用的签名对象及其对应的私钥
+     */
+    private static class SignatureHolder {
+        private final Signature signature;
+        private final PrivateKey privateKey;
+
+        private SignatureHolder(Signature signature, PrivateKey privateKey) {
+            this.signature = signature;
+            this.privateKey = privateKey;
+        }
+    }
 }
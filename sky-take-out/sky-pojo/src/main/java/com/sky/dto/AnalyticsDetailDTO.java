@@ -0,0 +1,33 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 订单分析使用的订单明细，附带商品所属分类
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnalyticsDetailDTO implements Serializable {
+    //订单id
+    private Long orderId;
+
+    //商品名称
+    private String name;
+
+    //菜品或套餐所属分类id
+    private Long categoryId;
+
+    //数量
+    private Integer number;
+
+    //单价
+    private BigDecimal amount;
+}
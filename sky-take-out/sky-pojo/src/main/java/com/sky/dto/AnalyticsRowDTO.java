@@ -0,0 +1,32 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 订单分析的分组统计结果
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class AnalyticsRowDTO implements Serializable {
+    //分组值：小时、支付方式或分类id
+    private Long groupKey;
+
+    //商品名称，按商品分组时有值
+    private String name;
+
+    //订单数
+    private Integer orderCount;
+
+    //商品数量
+    private Integer number;
+
+    //营业额（有效订单金额）
+    private Double turnover;
+}
@@ -0,0 +1,33 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 每天每个商品的销量
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DishSalesDTO implements Serializable {
+    //日期
+    private LocalDate statDate;
+
+    //商品名称
+    private String name;
+
+    //菜品id
+    private Long dishId;
+
+    //套餐id
+    private Long setmealId;
+
+    //销量
+    private Integer number;
+}
@@ -0,0 +1,23 @@
+package com.sky.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Data
+public class ExportJobDTO implements Serializable {
+
+    //导出类型 1运营数据 2订单明细
+    private Integer type;
+
+    //开始日期
+    private LocalDate begin;
+
+    //结束日期
+    private LocalDate end;
+
+    //文件格式 xlsx、csv，默认xlsx，csv只支持订单明细
+    private String format;
+
+}
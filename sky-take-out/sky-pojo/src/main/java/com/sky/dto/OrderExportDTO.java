@@ -0,0 +1,61 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 导出的订单明细行，每个订单明细一行，订单信息在该订单的每一行重复
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OrderExportDTO implements Serializable {
+    //订单号
+    private String number;
+
+    //订单状态
+    private Integer status;
+
+    //下单时间
+    private LocalDateTime orderTime;
+
+    //结账时间
+    private LocalDateTime checkoutTime;
+
+    //支付方式 1微信，2支付宝
+    private Integer payMethod;
+
+    //收货人
+    private String consignee;
+
+    //手机号
+    private String phone;
+
+    //地址
+    private String address;
+
+    //订单金额
+    private BigDecimal amount;
+
+    //备注
+    private String remark;
+
+    //商品名称
+    private String dishName;
+
+    //口味
+    private String dishFlavor;
+
+    //数量
+    private Integer dishNumber;
+
+    //单价
+    private BigDecimal dishAmount;
+}
@@ -0,0 +1,32 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 按时间区间分组的订单统计数据
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TimeBucketDTO implements Serializable {
+    //区间开始时间，格式为yyyy-MM-dd HH:mm:ss
+    private String bucket;
+
+    //分类id，按分类统计时有值
+    private Long categoryId;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数
+    private Integer validOrderCount;
+
+    //营业额（有效订单金额）
+    private Double turnover;
+}
@@ -0,0 +1,30 @@
+package com.sky.dto;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 分时统计查询条件
+ */
+@Data
+public class TimeSeriesQueryDTO implements Serializable {
+
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private LocalDate begin;
+
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private LocalDate end;
+
+    //统计粒度：hour、day、week、month，默认day
+    private String granularity;
+
+    //只统计指定状态的订单，为空时统计全部订单
+    private Integer status;
+
+    //是否按分类统计
+    private Boolean byCategory;
+
+}
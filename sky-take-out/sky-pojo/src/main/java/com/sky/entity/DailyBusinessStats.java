@@ -0,0 +1,64 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日营业数据汇总
+ * 增量更新时各字段表示变化量，未变化的字段为0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyBusinessStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //统计日期（下单日期）
+    private LocalDate statDate;
+
+    //营业额（已完成订单金额）
+    @Builder.Default
+    private BigDecimal turnover = BigDecimal.ZERO;
+
+    //订单总数
+    @Builder.Default
+    private Integer orderCount = 0;
+
+    //有效订单数（已完成）
+    @Builder.Default
+    private Integer validOrderCount = 0;
+
+    //新增用户数
+    @Builder.Default
+    private Integer newUsers = 0;
+
+    //各状态订单数 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+    @Builder.Default
+    private Integer pendingPaymentCount = 0;
+
+    @Builder.Default
+    private Integer toBeConfirmedCount = 0;
+
+    @Builder.Default
+    private Integer confirmedCount = 0;
+
+    @Builder.Default
+    private Integer deliveryInProgressCount = 0;
+
+    @Builder.Default
+    private Integer completedCount = 0;
+
+    @Builder.Default
+    private Integer cancelledCount = 0;
+
+    private LocalDateTime updateTime;
+}
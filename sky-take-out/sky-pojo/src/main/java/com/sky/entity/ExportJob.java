@@ -0,0 +1,77 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 报表导出任务
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportJob implements Serializable {
+
+    /**
+     * 导出类型 1运营数据 2订单明细
+     */
+    public static final Integer TYPE_BUSINESS = 1;
+    public static final Integer TYPE_ORDERS = 2;
+
+    /**
+     * 文件格式，运营数据只支持xlsx
+     */
+    public static final String FORMAT_XLSX = "xlsx";
+    public static final String FORMAT_CSV = "csv";
+
+    /**
+     * 任务状态 0排队中 1生成中 2已完成 3失败
+     */
+    public static final Integer PENDING = 0;
+    public static final Integer RUNNING = 1;
+    public static final Integer DONE = 2;
+    public static final Integer FAILED = 3;
+
+    private static final long serialVersionUID = 1L;
+
+    //下载凭证
+    private String token;
+
+    //导出类型
+    private Integer type;
+
+    //开始日期
+    private LocalDate begin;
+
+    //结束日期
+    private LocalDate end;
+
+    //文件格式
+    private String format;
+
+    //任务状态
+    private Integer status;
+
+    //下载时的文件名
+    private String fileName;
+
+    //导出文件在导出目录中的文件名
+    private String filePath;
+
+    //失败原因
+    private String error;
+
+    //提交人
+    private Long createUser;
+
+    private LocalDateTime createTime;
+
+    //完成时间
+    private LocalDateTime finishTime;
+}
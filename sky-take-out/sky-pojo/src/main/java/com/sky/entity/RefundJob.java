@@ -0,0 +1,67 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 退款任务
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundJob implements Serializable {
+
+    /**
+     * 任务状态 0待处理 1处理中 2已提交 3退款成功 4退款失败
+     */
+    public static final Integer PENDING = 0;
+    public static final Integer PROCESSING = 1;
+    public static final Integer SUBMITTED = 2;
+    public static final Integer SUCCESS = 3;
+    public static final Integer FAILED = 4;
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    //订单id
+    private Long orderId;
+
+    //商户订单号
+    private String outTradeNo;
+
+    //商户退款单号，同一订单固定不变，保证重复提交时微信侧幂等
+    private String outRefundNo;
+
+    //退款金额
+    private BigDecimal refundAmount;
+
+    //原订单金额
+    private BigDecimal totalAmount;
+
+    //任务状态
+    private Integer status;
+
+    //已尝试次数
+    private Integer attempts;
+
+    //下次执行时间
+    private LocalDateTime nextRetryTime;
+
+    //微信支付退款单号
+    private String refundId;
+
+    //最近一次失败原因
+    private String lastError;
+
+    private LocalDateTime createTime;
+
+    private LocalDateTime updateTime;
+}
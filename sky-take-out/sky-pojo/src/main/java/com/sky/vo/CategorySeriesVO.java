@@ -0,0 +1,34 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 一个分类的分时统计数据，数组与TimeSeriesVO的区间一一对应
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategorySeriesVO implements Serializable {
+
+    //分类id
+    private Long categoryId;
+
+    //分类名称
+    private String categoryName;
+
+    //包含该分类商品的订单数
+    private int[] orderCountList;
+
+    //包含该分类商品的有效订单数
+    private int[] validOrderCountList;
+
+    //该分类商品的营业额
+    private double[] turnoverList;
+
+}
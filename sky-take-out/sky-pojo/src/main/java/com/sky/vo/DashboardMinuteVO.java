@@ -0,0 +1,41 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * 工作台实时指标，一分钟的数据
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DashboardMinuteVO implements Serializable {
+
+    //分钟，自1970-01-01 00:00 UTC起的分钟数
+    private Long minute;
+
+    //新订单数
+    private Integer newOrders;
+
+    //支付订单数
+    private Integer paidOrders;
+
+    //完成订单数，已完成订单被取消时为负数
+    private Integer completedOrders;
+
+    //取消订单数
+    private Integer cancelledOrders;
+
+    //营业额，即完成订单的金额
+    private BigDecimal turnover;
+
+    //今日订单各状态数量的变化，key为订单状态
+    private Map<Integer, Integer> statusChanges;
+}
@@ -0,0 +1,40 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 报表导出任务
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportJobVO implements Serializable {
+
+    private String token;//下载凭证
+
+    private Integer type;//导出类型 1运营数据 2订单明细
+
+    private LocalDate begin;//开始日期
+
+    private LocalDate end;//结束日期
+
+    private String format;//文件格式 xlsx、csv
+
+    private Integer status;//任务状态 0排队中 1生成中 2已完成 3失败
+
+    private String fileName;//文件名
+
+    private String error;//失败原因
+
+    private LocalDateTime createTime;//提交时间
+
+    private LocalDateTime finishTime;//完成时间
+}
@@ -0,0 +1,55 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 订单分析结果，营业额和商品数量只统计已完成订单
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderAnalyticsVO implements Serializable {
+
+    //每小时（0-23点）的订单数
+    private int[] hourOrderCountList;
+
+    //每小时（0-23点）的营业额
+    private double[] hourTurnoverList;
+
+    //支付方式 1微信，2支付宝
+    private int[] payMethodList;
+
+    //各支付方式的订单数
+    private int[] payMethodOrderCountList;
+
+    //各支付方式的营业额
+    private double[] payMethodTurnoverList;
+
+    //分类id
+    private long[] categoryIdList;
+
+    //分类名称
+    private String[] categoryNameList;
+
+    //各分类的商品销量
+    private int[] categoryNumberList;
+
+    //各分类的营业额
+    private double[] categoryTurnoverList;
+
+    //商品名称，按销量降序
+    private String[] dishNameList;
+
+    //商品销量
+    private int[] dishNumberList;
+
+    //商品营业额
+    private double[] dishTurnoverList;
+
+}
@@ -0,0 +1,38 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 分时统计结果，各数组按区间一一对应，没有订单的区间为0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesVO implements Serializable {
+
+    //统计粒度
+    private String granularity;
+
+    //区间开始时间，按小时统计时格式为yyyy-MM-dd HH:mm，否则为yyyy-MM-dd
+    private String[] bucketList;
+
+    //订单总数
+    private int[] orderCountList;
+
+    //有效订单数
+    private int[] validOrderCountList;
+
+    //营业额
+    private double[] turnoverList;
+
+    //各分类的统计数据，按分类统计时有值
+    private List<CategorySeriesVO> categoryList;
+
+}
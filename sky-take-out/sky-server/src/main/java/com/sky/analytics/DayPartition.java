@@ -0,0 +1,105 @@
+package com.sky.analytics;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 一天的订单数据，按列保存在基本类型数组中
+ * 订单列每个订单一行，明细列每个订单明细一行，通过detailOrder关联到订单所在的行
+ * 商品名称和分类id保存为字典编码，统计时可直接作为数组下标
+ * 写入（追加、修改状态）持有写锁，统计持有读锁
+ */
+class DayPartition {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    final LocalDate date;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //订单列
+    int orderSize;
+    long[] orderId = new long[INITIAL_CAPACITY];
+    byte[] hour = new byte[INITIAL_CAPACITY];
+    byte[] status = new byte[INITIAL_CAPACITY];
+    byte[] payMethod = new byte[INITIAL_CAPACITY];
+    double[] amount = new double[INITIAL_CAPACITY];
+
+    //订单id是否按升序追加，升序时用二分查找定位订单
+    private boolean sorted = true;
+
+    //明细列
+    int detailSize;
+    int[] detailOrder = new int[INITIAL_CAPACITY];
+    int[] detailName = new int[INITIAL_CAPACITY];
+    int[] detailCategory = new int[INITIAL_CAPACITY];
+    int[] detailNumber = new int[INITIAL_CAPACITY];
+    double[] detailAmount = new double[INITIAL_CAPACITY];
+
+    DayPartition(LocalDate date) {
+        this.date = date;
+    }
+
+    /**
+     * 追加一个订单，调用方持有写锁
+     * @return 订单所在的行
+     */
+    int appendOrder(long id, int orderHour, int orderStatus, int orderPayMethod, double orderAmount) {
+        if (orderSize == orderId.length) {
+            int capacity = orderSize * 2;
+            orderId = Arrays.copyOf(orderId, capacity);
+            hour = Arrays.copyOf(hour, capacity);
+            status = Arrays.copyOf(status, capacity);
+            payMethod = Arrays.copyOf(payMethod, capacity);
+            amount = Arrays.copyOf(amount, capacity);
+        }
+        if (orderSize > 0 && orderId[orderSize - 1] > id) {
+            sorted = false;
+        }
+        orderId[orderSize] = id;
+        hour[orderSize] = (byte) orderHour;
+        status[orderSize] = (byte) orderStatus;
+        payMethod[orderSize] = (byte) orderPayMethod;
+        amount[orderSize] = orderAmount;
+        return orderSize++;
+    }
+
+    /**
+     * 追加一条订单明细，调用方持有写锁
+     */
+    void appendDetail(int orderRow, int name, int category, int number, double detailAmountValue) {
+        if (detailSize == detailOrder.length) {
+            int capacity = detailSize * 2;
+            detailOrder = Arrays.copyOf(detailOrder, capacity);
+            detailName = Arrays.copyOf(detailName, capacity);
+            detailCategory = Arrays.copyOf(detailCategory, capacity);
+            detailNumber = Arrays.copyOf(detailNumber, capacity);
+            detailAmount = Arrays.copyOf(detailAmount, capacity);
+        }
+        detailOrder[detailSize] = orderRow;
+        detailName[detailSize] = name;
+        detailCategory[detailSize] = category;
+        detailNumber[detailSize] = number;
+        detailAmount[detailSize] = detailAmountValue;
+        detailSize++;
+    }
+
+    /**
+     * 查找订单所在的行，调用方持有读锁或写锁
+     * @param id
+     * @return 不存在时返回-1
+     */
+    int findOrder(long id) {
+        if (sorted) {
+            int row = Arrays.binarySearch(orderId, 0, orderSize, id);
+            return row >= 0 ? row : -1;
+        }
+        for (int i = 0; i < orderSize; i++) {
+            if (orderId[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,353 @@
+package com.sky.analytics;
+
+import com.sky.dto.AnalyticsDetailDTO;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.mapper.AnalyticsMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.vo.OrderAnalyticsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 订单分析内存列存储（可选，sky.report.analytics-enabled开启）
+ * 最近若干天的订单按天分区，每列保存在基本类型数组中，商品名称、分类id字典编码；
+ * 启动后在后台从数据库加载，之后根据订单状态变更事件追加新订单、修改订单状态，统计时直接遍历数组，不访问数据库
+ * 加载完成之前，以及查询范围超出内存中的数据时，由调用方改为查询数据库
+ */
+@Component
+@Slf4j
+public class OrderColumnStore {
+
+    private static final byte COMPLETED = Orders.COMPLETED.byteValue();
+
+    @Autowired
+    private AnalyticsMapper analyticsMapper;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
+    //按下单日期分区的订单数据
+    private final Map<LocalDate, DayPartition> partitions = new ConcurrentHashMap<>();
+
+    //商品名称字典
+    private final Map<String, Integer> nameCodes = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    //分类id字典，分类为空时编码为0L
+    private final Map<Long, Integer> categoryCodes = new HashMap<>();
+    private final List<Long> categoryIds = new ArrayList<>();
+
+    //已完整加载的最早日期，之后的日期都可以从内存中统计；为null时尚未开始加载
+    private volatile LocalDate loadedFrom;
+
+    /**
+     * 应用启动后在后台线程中加载最近的订单，从今天开始向前逐天加载
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!reportProperties.isAnalyticsEnabled()) {
+            return;
+        }
+        Thread loader = new Thread(this::load, "analytics-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        LocalDate first = today.minusDays(reportProperties.getAnalyticsDays() - 1);
+        int orderCount = 0;
+        for (LocalDate date = today; !date.isBefore(first); date = date.minusDays(1)) {
+            try {
+                orderCount += loadDay(date);
+            } catch (Exception e) {
+                log.error("加载订单分析数据失败，{}之前的查询将访问数据库", date, e);
+                return;
+            }
+            loadedFrom = date;
+        }
+        log.info("订单分析数据加载完成：{}天，{}个订单，耗时{}ms", reportProperties.getAnalyticsDays(), orderCount,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 加载一天的订单，加载期间该分区的事件等待加载完成；已由事件写入的订单只更新状态
+     * @param date
+     * @return 订单数
+     */
+    private int loadDay(LocalDate date) {
+        LocalDateTime begin = date.atStartOfDay();
+        LocalDateTime end = begin.plusDays(1);
+        DayPartition partition = partitions.computeIfAbsent(date, DayPartition::new);
+        partition.lock.writeLock().lock();
+        try {
+            List<Orders> orderList = analyticsMapper.listOrders(begin, end);
+            Map<Long, List<AnalyticsDetailDTO>> detailMap = new HashMap<>();
+            for (AnalyticsDetailDTO detail : analyticsMapper.listDetails(begin, end)) {
+                detailMap.computeIfAbsent(detail.getOrderId(), orderId -> new ArrayList<>()).add(detail);
+            }
+            for (Orders order : orderList) {
+                put(partition, order, order.getStatus(), detailMap.getOrDefault(order.getId(), Collections.emptyList()));
+            }
+            return orderList.size();
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 订单状态变更提交后更新内存中的数据
+     * 新订单以及内存中还没有的订单从数据库读取后追加，已有的订单只修改状态
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusCommitted(OrderStatusChangedEvent event) {
+        if (!reportProperties.isAnalyticsEnabled() || event.getOrderTime() == null || event.getToStatus() == null) {
+            return;
+        }
+        LocalDate date = event.getOrderTime().toLocalDate();
+        if (date.isBefore(LocalDate.now().minusDays(reportProperties.getAnalyticsDays() - 1))) {
+            return;
+        }
+        try {
+            DayPartition partition = partitions.computeIfAbsent(date, DayPartition::new);
+            partition.lock.writeLock().lock();
+            try {
+                int row = partition.findOrder(event.getOrderId());
+                if (row >= 0) {
+                    partition.status[row] = event.getToStatus().byteValue();
+                    return;
+                }
+            } finally {
+                partition.lock.writeLock().unlock();
+            }
+
+            Orders order = analyticsMapper.getOrder(event.getOrderId());
+            if (order == null) {
+                return;
+            }
+            List<AnalyticsDetailDTO> detailList = analyticsMapper.listDetailsByOrderId(event.getOrderId());
+            partition.lock.writeLock().lock();
+            try {
+//                读取数据库期间可能已由其他事件写入，此时数据库中的状态可能比事件旧，以事件的状态为准
+                put(partition, order, event.getToStatus(), detailList);
+            } finally {
+                partition.lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            log.error("更新订单分析数据失败：{}", event, e);
+        }
+    }
+
+    /**
+     * 写入一个订单，已存在时只更新状态，调用方持有分区的写锁
+     * @param status 写入的订单状态，加载时为数据库中的状态，处理事件时为事件变更后的状态
+     */
+    private void put(DayPartition partition, Orders order, Integer status, List<AnalyticsDetailDTO> detailList) {
+        int row = partition.findOrder(order.getId());
+        if (row >= 0) {
+            partition.status[row] = status.byteValue();
+            return;
+        }
+        row = partition.appendOrder(order.getId(), order.getOrderTime().getHour(), status,
+                order.getPayMethod() == null ? 0 : order.getPayMethod(),
+                order.getAmount() == null ? 0.0 : order.getAmount().doubleValue());
+        for (AnalyticsDetailDTO detail : detailList) {
+            partition.appendDetail(row, encodeName(detail.getName()), encodeCategory(detail.getCategoryId()),
+                    detail.getNumber() == null ? 0 : detail.getNumber(),
+                    detail.getAmount() == null ? 0.0 : detail.getAmount().doubleValue());
+        }
+    }
+
+    private synchronized int encodeName(String name) {
+        return nameCodes.computeIfAbsent(name == null ? "" : name, key -> {
+            names.add(key);
+            return names.size() - 1;
+        });
+    }
+
+    private synchronized int encodeCategory(Long categoryId) {
+        return categoryCodes.computeIfAbsent(categoryId == null ? 0L : categoryId, key -> {
+            categoryIds.add(key);
+            return categoryIds.size() - 1;
+        });
+    }
+
+    private synchronized int nameCount() {
+        return names.size();
+    }
+
+    private synchronized int categoryCount() {
+        return categoryIds.size();
+    }
+
+    /**
+     * 删除超出保存天数的分区，每天执行一次
+     */
+    public void evictExpired() {
+        LocalDate first = LocalDate.now().minusDays(reportProperties.getAnalyticsDays() - 1);
+        partitions.keySet().removeIf(date -> date.isBefore(first));
+        LocalDate from = loadedFrom;
+        if (from != null && from.isBefore(first)) {
+            loadedFrom = first;
+        }
+    }
+
+    /**
+     * 指定日期区间能否从内存中统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    public boolean covers(LocalDate begin, LocalDate end) {
+        LocalDate from = loadedFrom;
+        return reportProperties.isAnalyticsEnabled() && from != null && !begin.isBefore(from) && !end.isBefore(begin);
+    }
+
+    /**
+     * 统计指定日期区间的订单，调用前通过covers判断；返回结果中的分类名称由调用方填写
+     * @param begin
+     * @param end
+     * @param topDishes 返回销量最高的商品数
+     * @return
+     */
+    public OrderAnalyticsVO query(LocalDate begin, LocalDate end, int topDishes) {
+        int[] hourOrderCount = new int[24];
+        double[] hourTurnover = new double[24];
+        int[] payMethodOrderCount = new int[3];
+        double[] payMethodTurnover = new double[3];
+        int[] nameNumber = new int[0];
+        double[] nameTurnover = new double[0];
+        int[] categoryNumber = new int[0];
+        double[] categoryTurnover = new double[0];
+
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DayPartition partition = partitions.get(date);
+            if (partition == null) {
+                continue;
+            }
+            partition.lock.readLock().lock();
+            try {
+                //分区中的编码都在加锁前生成，此时字典大小足以作为数组长度
+                if (nameNumber.length < nameCount()) {
+                    nameNumber = Arrays.copyOf(nameNumber, nameCount());
+                    nameTurnover = Arrays.copyOf(nameTurnover, nameNumber.length);
+                }
+                if (categoryNumber.length < categoryCount()) {
+                    categoryNumber = Arrays.copyOf(categoryNumber, categoryCount());
+                    categoryTurnover = Arrays.copyOf(categoryTurnover, categoryNumber.length);
+                }
+
+                byte[] status = partition.status;
+                byte[] hour = partition.hour;
+                byte[] payMethod = partition.payMethod;
+                double[] amount = partition.amount;
+                for (int i = 0, n = partition.orderSize; i < n; i++) {
+                    int pm = payMethod[i] >= 0 && payMethod[i] < 3 ? payMethod[i] : 0;
+                    hourOrderCount[hour[i]]++;
+                    payMethodOrderCount[pm]++;
+                    if (status[i] == COMPLETED) {
+                        hourTurnover[hour[i]] += amount[i];
+                        payMethodTurnover[pm] += amount[i];
+                    }
+                }
+
+                int[] detailOrder = partition.detailOrder;
+                int[] detailName = partition.detailName;
+                int[] detailCategory = partition.detailCategory;
+                int[] detailNumber = partition.detailNumber;
+                double[] detailAmount = partition.detailAmount;
+                for (int j = 0, n = partition.detailSize; j < n; j++) {
+                    if (status[detailOrder[j]] != COMPLETED) {
+                        continue;
+                    }
+                    double turnover = detailAmount[j] * detailNumber[j];
+                    nameNumber[detailName[j]] += detailNumber[j];
+                    nameTurnover[detailName[j]] += turnover;
+                    categoryNumber[detailCategory[j]] += detailNumber[j];
+                    categoryTurnover[detailCategory[j]] += turnover;
+                }
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+        }
+
+        //支付方式：1微信，2支付宝
+        int[] payMethodList = {1, 2};
+        OrderAnalyticsVO orderAnalyticsVO = OrderAnalyticsVO.builder()
+                .hourOrderCountList(hourOrderCount)
+                .hourTurnoverList(hourTurnover)
+                .payMethodList(payMethodList)
+                .payMethodOrderCountList(new int[]{payMethodOrderCount[1], payMethodOrderCount[2]})
+                .payMethodTurnoverList(new double[]{payMethodTurnover[1], payMethodTurnover[2]})
+                .build();
+
+        //分类按营业额降序
+        List<Integer> categoryRows = nonZero(categoryNumber);
+        double[] categoryTurnoverSorted = categoryTurnover;
+        categoryRows.sort((a, b) -> Double.compare(categoryTurnoverSorted[b], categoryTurnoverSorted[a]));
+        long[] categoryIdList = new long[categoryRows.size()];
+        int[] categoryNumberList = new int[categoryRows.size()];
+        double[] categoryTurnoverList = new double[categoryRows.size()];
+        synchronized (this) {
+            for (int i = 0; i < categoryRows.size(); i++) {
+                categoryIdList[i] = categoryIds.get(categoryRows.get(i));
+            }
+        }
+        for (int i = 0; i < categoryRows.size(); i++) {
+            categoryNumberList[i] = categoryNumber[categoryRows.get(i)];
+            categoryTurnoverList[i] = categoryTurnover[categoryRows.get(i)];
+        }
+        orderAnalyticsVO.setCategoryIdList(categoryIdList);
+        orderAnalyticsVO.setCategoryNumberList(categoryNumberList);
+        orderAnalyticsVO.setCategoryTurnoverList(categoryTurnoverList);
+
+        //商品按销量降序，只返回前topDishes个
+        List<Integer> nameRows = nonZero(nameNumber);
+        int[] nameNumberSorted = nameNumber;
+        nameRows.sort((a, b) -> Integer.compare(nameNumberSorted[b], nameNumberSorted[a]));
+        int size = Math.min(topDishes, nameRows.size());
+        String[] dishNameList = new String[size];
+        int[] dishNumberList = new int[size];
+        double[] dishTurnoverList = new double[size];
+        synchronized (this) {
+            for (int i = 0; i < size; i++) {
+                dishNameList[i] = names.get(nameRows.get(i));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            dishNumberList[i] = nameNumber[nameRows.get(i)];
+            dishTurnoverList[i] = nameTurnover[nameRows.get(i)];
+        }
+        orderAnalyticsVO.setDishNameList(dishNameList);
+        orderAnalyticsVO.setDishNumberList(dishNumberList);
+        orderAnalyticsVO.setDishTurnoverList(dishTurnoverList);
+        return orderAnalyticsVO;
+    }
+
+    private List<Integer> nonZero(int[] values) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                rows.add(i);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,42 @@
+package com.sky.config;
+
+import com.sky.properties.HttpClientProperties;
+import com.sky.properties.ResilienceProperties;
+import com.sky.utils.AsyncHttpClientUtil;
+import com.sky.utils.DependencyGuard;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 配置类，用于初始化HttpClientUtil、AsyncHttpClientUtil共享的连接池客户端，以及外部依赖的熔断器、舱壁配置
+ */
+@Configuration
+@Slf4j
+public class HttpClientConfiguration implements InitializingBean, DisposableBean {
+
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    @Autowired
+    private ResilienceProperties resilienceProperties;
+
+    @Override
+    public void afterPropertiesSet() {
+        log.info("开始初始化外部依赖熔断配置：{}", resilienceProperties);
+        DependencyGuard.configure(resilienceProperties);
+        log.info("开始初始化http连接池：{}", httpClientProperties);
+        HttpClientUtil.configure(httpClientProperties);
+        AsyncHttpClientUtil.configure(httpClientProperties);
+    }
+
+    @Override
+    public void destroy() {
+        log.info("关闭http连接池");
+        HttpClientUtil.shutdown();
+        AsyncHttpClientUtil.shutdown();
+    }
+}
@@ -1,10 +1,14 @@
 package com.sky.config;
 
+import com.sky.properties.JwtProperties;
+import com.sky.service.impl.TokenRevocationServiceImpl;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -21,4 +25,22 @@ public class RedisConfiguration {
         redisTemplate.setKeySerializer(new StringRedisSerializer());
         return redisTemplate;
     }
+
+    /**
+     * 订阅令牌吊销通知频道
+     * @param redisConnectionFactory
+     * @param tokenRevocationService
+     * @param jwtProperties
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer tokenRevocationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                          TokenRevocationServiceImpl tokenRevocationService,
+                                                                          JwtProperties jwtProperties) {
+        log.info("开始订阅令牌吊销通知频道：{}", jwtProperties.getRevocationChannel());
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(tokenRevocationService, new ChannelTopic(jwtProperties.getRevocationChannel()));
+        return container;
+    }
 }
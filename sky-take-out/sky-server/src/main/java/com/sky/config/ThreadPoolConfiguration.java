@@ -0,0 +1,122 @@
+package com.sky.config;
+
+import com.sky.properties.RefundProperties;
+import com.sky.properties.ReportProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 配置类，用于创建后台任务使用的线程池
+ */
+@Configuration
+@Slf4j
+public class ThreadPoolConfiguration {
+
+    /**
+     * 退款工作线程池，线程数即调用微信支付退款接口的最大并发数
+     * @param refundProperties
+     * @return
+     */
+    @Bean("refundExecutor")
+    public ThreadPoolTaskExecutor refundExecutor(RefundProperties refundProperties) {
+        log.info("开始创建退款工作线程池：{}", refundProperties);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(refundProperties.getWorkerThreads());
+        executor.setMaxPoolSize(refundProperties.getWorkerThreads());
+        executor.setQueueCapacity(refundProperties.getBatchSize());
+        executor.setThreadNamePrefix("refund-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 支付回调处理线程池，队列满时由回调线程自行处理，保证通知不丢失
+     * @return
+     */
+    @Bean("notifyExecutor")
+    public ThreadPoolTaskExecutor notifyExecutor() {
+        log.info("开始创建支付回调处理线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("pay-notify-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * 业务线程池，异步http请求返回后，后续的数据库等阻塞操作切换到该线程池执行，不占用IO线程
+     * 队列满时由提交线程自行执行，保证请求不会因为任务被拒绝而一直挂起
+     * @return
+     */
+    @Bean("bizExecutor")
+    public ThreadPoolTaskExecutor bizExecutor() {
+        log.info("开始创建业务线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("biz-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * WebSocket群发线程池，单线程保证消息按产生的顺序进入各会话的发送队列
+     * @return
+     */
+    @Bean("wsExecutor")
+    public ThreadPoolTaskExecutor wsExecutor() {
+        log.info("开始创建WebSocket群发线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(10000);
+        executor.setThreadNamePrefix("ws-broadcast-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    /**
+     * 报表导出线程池，导出任务占用内存和数据库连接较多，线程数和排队数都有上限，超出时拒绝提交
+     * @return
+     */
+    @Bean("exportExecutor")
+    public ThreadPoolTaskExecutor exportExecutor(ReportProperties reportProperties) {
+        log.info("开始创建报表导出线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(reportProperties.getExportWorkers());
+        executor.setMaxPoolSize(reportProperties.getExportWorkers());
+        executor.setQueueCapacity(reportProperties.getExportQueueCapacity());
+        executor.setThreadNamePrefix("report-export-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * 统计查询线程池，工作台等页面的多个独立统计查询并发执行
+     * 线程数不超过数据库连接池的一半，避免占满连接影响下单等业务
+     * @return
+     */
+    @Bean("queryExecutor")
+    public ThreadPoolTaskExecutor queryExecutor() {
+        log.info("开始创建统计查询线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("query-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+}
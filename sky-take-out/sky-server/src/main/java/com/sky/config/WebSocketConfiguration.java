@@ -1,13 +1,24 @@
 package com.sky.config;
 
+import com.sky.websocket.WebSocketCluster;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.server.standard.ServerEndpointExporter;
 
+import java.util.Arrays;
+
 /**
  * WebSocket配置类，用于注册WebSocket的Bean
  */
 @Configuration
+@Slf4j
 public class WebSocketConfiguration {
 
     @Bean
@@ -15,4 +26,28 @@ public class WebSocketConfiguration {
         return new ServerEndpointExporter();
     }
 
-}
\ No newline at end of file
+    /**
+     * 订阅WebSocket集群频道：群发频道和当前节点的定向频道
+     * 收到的消息在群发线程池中投递，与本节点产生的消息保持顺序
+     * @param redisConnectionFactory
+     * @param webSocketCluster
+     * @param webSocketProperties
+     * @param wsExecutor
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer webSocketListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                    WebSocketCluster webSocketCluster,
+                                                                    WebSocketProperties webSocketProperties,
+                                                                    @Qualifier("wsExecutor") ThreadPoolTaskExecutor wsExecutor) {
+        log.info("开始订阅WebSocket集群频道，当前节点：{}", webSocketCluster.getNodeId());
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.setTaskExecutor(wsExecutor);
+        container.addMessageListener(webSocketCluster, Arrays.asList(
+                new ChannelTopic(webSocketProperties.getBroadcastChannel()),
+                new ChannelTopic(webSocketCluster.getNodeChannel())));
+        return container;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.utils.DependencyGuard;
+import com.sky.utils.HttpClientUtil;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 运行监控
+ */
+@RestController
+@RequestMapping("/admin/monitor")
+@Api(tags = "运行监控相关接口")
+@Slf4j
+public class MonitorController {
+
+    /**
+     * 查询外部http调用的指标，按域名统计
+     * @return
+     */
+    @GetMapping("/http")
+    @ApiOperation("查询外部http调用指标")
+    public Result<Map<String, Map<String, Object>>> httpMetrics() {
+        return Result.success(HttpClientUtil.getHostMetrics());
+    }
+
+    /**
+     * 查询外部依赖的熔断器和舱壁状态
+     * @return
+     */
+    @GetMapping("/breakers")
+    @ApiOperation("查询外部依赖熔断状态")
+    public Result<Map<String, Map<String, Object>>> breakers() {
+        return Result.success(DependencyGuard.snapshotAll());
+    }
+}
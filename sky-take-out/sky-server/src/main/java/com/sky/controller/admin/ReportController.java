@@ -1,10 +1,16 @@
 package com.sky.controller.admin;
 
 
+import com.sky.dto.ExportJobDTO;
+import com.sky.dto.TimeSeriesQueryDTO;
 import com.sky.result.Result;
+import com.sky.service.ExportJobService;
 import com.sky.service.ReportService;
+import com.sky.vo.ExportJobVO;
+import com.sky.vo.OrderAnalyticsVO;
 import com.sky.vo.OrderReportVO;
 import com.sky.vo.SalesTop10ReportVO;
+import com.sky.vo.TimeSeriesVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
 import io.swagger.annotations.Api;
@@ -13,10 +19,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.time.LocalDate;
 
 /**
@@ -31,6 +41,9 @@ public class ReportController {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private ExportJobService exportJobService;
+
     @GetMapping("/turnoverStatistics")
     @ApiOperation("营业额数据统计")
     public Result<TurnoverReportVO> turnoverStatistics(
@@ -73,6 +86,32 @@ public class ReportController {
         return Result.success(reportService.getOrderStatistics(begin,end));
     }
 
+    /**
+     * 分时统计，例如按小时统计最近一个月的订单用于生成午高峰热力图
+     * @param timeSeriesQueryDTO
+     * @return
+     */
+    @GetMapping("/timeSeries")
+    @ApiOperation("分时统计")
+    public Result<TimeSeriesVO> timeSeries(TimeSeriesQueryDTO timeSeriesQueryDTO) {
+        log.info("分时统计：{}", timeSeriesQueryDTO);
+        return Result.success(reportService.getTimeSeries(timeSeriesQueryDTO));
+    }
+
+    /**
+     * 订单分析：按小时、支付方式、分类、商品统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @GetMapping("/analytics")
+    @ApiOperation("订单分析")
+    public Result<OrderAnalyticsVO> analytics(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end){
+        return Result.success(reportService.getOrderAnalytics(begin, end));
+    }
+
     /**
      * 销量排名统计
      * @param begin
@@ -93,7 +132,57 @@ public class ReportController {
      */
     @GetMapping("/export")
     @ApiOperation("导出运营数据报表")
-    public void export(HttpServletResponse response){
-        reportService.exportBusinessData(response);
+    public void export(HttpServletResponse response) throws IOException {
+        exportJobService.exportDefault(response);
+    }
+
+    /**
+     * 导出订单明细（csv），边查询边输出，适合导出大量订单
+     * @param begin
+     * @param end
+     * @param response
+     */
+    @GetMapping("/export/orders")
+    @ApiOperation("导出订单明细")
+    public void exportOrders(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+            HttpServletResponse response) throws IOException {
+        log.info("导出订单明细：{}至{}", begin, end);
+        exportJobService.exportOrders(begin, end, response);
+    }
+
+    /**
+     * 提交导出任务
+     * @param exportJobDTO
+     * @return
+     */
+    @PostMapping("/export/jobs")
+    @ApiOperation("提交导出任务")
+    public Result<ExportJobVO> submitExportJob(@RequestBody ExportJobDTO exportJobDTO) {
+        log.info("提交导出任务：{}", exportJobDTO);
+        return Result.success(exportJobService.submit(exportJobDTO));
+    }
+
+    /**
+     * 查询导出任务
+     * @param token
+     * @return
+     */
+    @GetMapping("/export/jobs/{token}")
+    @ApiOperation("查询导出任务")
+    public Result<ExportJobVO> getExportJob(@PathVariable String token) {
+        return Result.success(exportJobService.getJob(token));
+    }
+
+    /**
+     * 下载导出文件
+     * @param token
+     * @param response
+     */
+    @GetMapping("/export/jobs/{token}/file")
+    @ApiOperation("下载导出文件")
+    public void downloadExportFile(@PathVariable String token, HttpServletResponse response) throws IOException {
+        exportJobService.download(token, response);
     }
 }
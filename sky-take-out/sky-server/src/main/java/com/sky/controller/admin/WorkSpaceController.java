@@ -1,11 +1,14 @@
 package com.sky.controller.admin;
 
 import com.sky.result.Result;
+import com.sky.service.DashboardService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
+import com.sky.vo.DashboardMinuteVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import com.sky.vo.WorkspaceOverViewVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
@@ -16,6 +19,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.List;
 
 /**
  * 工作台
@@ -28,6 +32,9 @@ public class WorkSpaceController {
     @Autowired
     private WorkspaceService workspaceService;
 
+    @Autowired
+    private DashboardService dashboardService;
+
     /**
      * 工作台今日数据查询
      * @return
@@ -73,4 +80,24 @@ public class WorkSpaceController {
     public Result<SetmealOverViewVO> setmealOverView(){
         return Result.success(workspaceService.getSetmealOverView());
     }
+
+    /**
+     * 查询工作台全部数据，一次请求返回今日数据、订单管理数据、菜品和套餐总览
+     * @return
+     */
+    @GetMapping("/overview")
+    @ApiOperation("查询工作台全部数据")
+    public Result<WorkspaceOverViewVO> overview(){
+        return Result.success(workspaceService.getOverView());
+    }
+
+    /**
+     * 查询最近每分钟的实时指标，之后的变化通过WebSocket的工作台主题推送
+     * @return
+     */
+    @GetMapping("/realtime")
+    @ApiOperation("查询实时指标")
+    public Result<List<DashboardMinuteVO>> realtime(){
+        return Result.success(dashboardService.getRecentMinutes());
+    }
 }
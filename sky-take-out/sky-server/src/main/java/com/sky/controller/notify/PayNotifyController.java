@@ -4,7 +4,7 @@ import com.alibaba.druid.support.json.JSONUtils;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.sky.properties.WeChatProperties;
-import com.sky.service.OrderService;
+import com.sky.service.PayNotifyService;
 import com.wechat.pay.contrib.apache.httpclient.util.AesUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.entity.ContentType;
@@ -27,14 +27,17 @@ import java.util.HashMap;
 public class PayNotifyController {
 
     @Autowired
-    private OrderService orderService;
+    private PayNotifyService payNotifyService;
 
     @Autowired
     private WeChatProperties weChatProperties;
 
+    //回调报文解密工具
+    private volatile AesUtil aesUtil;
 
     /**
      * 支付成功回调
+     * 只做解密校验和入队，立即响应微信，业务处理异步进行
      *
      * @param request
      */
@@ -42,21 +45,60 @@ public class PayNotifyController {
     public void paySuccessNotify(HttpServletRequest request, HttpServletResponse response) throws Exception {
         //读取数据
         String body = readData(request);
-        log.info("支付成功回调：{}", body);
 
-        //数据解密
-        String plainText = decryptData(body);
-        log.info("解密后的文本：{}", plainText);
+        //数据解密，解密失败说明报文不可信，响应失败让微信重新通知
+        String plainText;
+        try {
+            plainText = decryptData(body);
+        } catch (Exception e) {
+            log.error("支付成功回调解密失败：{}", body, e);
+            responseFailToWeixin(response);
+            return;
+        }
 
         JSONObject jsonObject = JSON.parseObject(plainText);
         String outTradeNo = jsonObject.getString("out_trade_no");//商户平台订单号
         String transactionId = jsonObject.getString("transaction_id");//微信支付交易号
 
-        log.info("商户平台订单号：{}", outTradeNo);
-        log.info("微信支付交易号：{}", transactionId);
+        log.info("支付成功回调，商户平台订单号：{}，微信支付交易号：{}", outTradeNo, transactionId);
 
-        //业务处理，修改订单状态、来单提醒
-        orderService.paySuccess(outTradeNo);
+        //按交易号去重后入队，修改订单状态、来单提醒异步处理
+        payNotifyService.acceptPaySuccess(outTradeNo, transactionId);
+
+        //给微信响应
+        responseToWeixin(response);
+    }
+
+    /**
+     * 退款结果回调
+     * 与支付成功回调相同，解密后入队并立即响应微信，退款结果由后台批量写入
+     *
+     * @param request
+     */
+    @RequestMapping("/refundSuccess")
+    public void refundSuccessNotify(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        //读取数据
+        String body = readData(request);
+
+        //数据解密
+        String plainText;
+        try {
+            plainText = decryptData(body);
+        } catch (Exception e) {
+            log.error("退款结果回调解密失败：{}", body, e);
+            responseFailToWeixin(response);
+            return;
+        }
+
+        JSONObject jsonObject = JSON.parseObject(plainText);
+        String outTradeNo = jsonObject.getString("out_trade_no");//商户平台订单号
+        String outRefundNo = jsonObject.getString("out_refund_no");//商户退款单号
+        String refundId = jsonObject.getString("refund_id");//微信支付退款单号
+        String refundStatus = jsonObject.getString("refund_status");//退款状态
+
+        log.info("退款结果回调，商户退款单号：{}，退款状态：{}", outRefundNo, refundStatus);
+
+        payNotifyService.acceptRefundResult(outTradeNo, outRefundNo, refundId, refundStatus);
 
         //给微信响应
         responseToWeixin(response);
@@ -96,7 +138,9 @@ public class PayNotifyController {
         String nonce = resource.getString("nonce");
         String associatedData = resource.getString("associated_data");
 
-        AesUtil aesUtil = new AesUtil(weChatProperties.getApiV3Key().getBytes(StandardCharsets.UTF_8));
+        if (aesUtil == null) {
+            aesUtil = new AesUtil(weChatProperties.getApiV3Key().getBytes(StandardCharsets.UTF_8));
+        }
         //密文解密
         String plainText = aesUtil.decryptToString(associatedData.getBytes(StandardCharsets.UTF_8),
                 nonce.getBytes(StandardCharsets.UTF_8),
@@ -118,4 +162,18 @@ public class PayNotifyController {
         response.getOutputStream().write(JSONUtils.toJSONString(map).getBytes(StandardCharsets.UTF_8));
         response.flushBuffer();
     }
+
+    /**
+     * 给微信响应失败，微信会按策略重新通知
+     * @param response
+     */
+    private void responseFailToWeixin(HttpServletResponse response) throws Exception{
+        response.setStatus(500);
+        HashMap<Object, Object> map = new HashMap<>();
+        map.put("code", "FAIL");
+        map.put("message", "FAIL");
+        response.setHeader("Content-type", ContentType.APPLICATION_JSON.toString());
+        response.getOutputStream().write(JSONUtils.toJSONString(map).getBytes(StandardCharsets.UTF_8));
+        response.flushBuffer();
+    }
 }
@@ -4,6 +4,7 @@ import com.sky.constant.StatusConstant;
 import com.sky.dto.DishDTO;
 import com.sky.entity.Dish;
 import com.sky.result.Result;
+import com.sky.service.DailyStatisticsService;
 import com.sky.service.DishService;
 import com.sky.vo.DishVO;
 import io.swagger.annotations.Api;
@@ -13,7 +14,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @RestController("userDishController")
@@ -21,21 +25,28 @@ import java.util.Set;
 @Slf4j
 @Api(tags = "C端-菜品浏览接口")
 public class DishController {
+    //按热度排序
+    private static final String SORT_POPULAR = "popular";
+
     @Autowired
     private DishService dishService;
 
     @Autowired
     private RedisTemplate redisTemplate;
 
+    @Autowired
+    private DailyStatisticsService dailyStatisticsService;
+
     /**
      * 根据分类id查询菜品
      *
      * @param categoryId
+     * @param sort 排序方式，popular表示按最近销量从高到低排序
      * @return
      */
     @GetMapping("/list")
     @ApiOperation("根据分类id查询菜品")
-    public Result<List<DishVO>> list(Long categoryId) {
+    public Result<List<DishVO>> list(Long categoryId, String sort) {
 //        构造redis中的key，规则：dish_分类Id
         String key = "dish_" + categoryId;
 
@@ -43,7 +54,7 @@ public class DishController {
         List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
         if (list != null && list.size() > 0) {
 //            如果存在，直接返回，无需查询数据库
-            return Result.success(list);
+            return Result.success(sortByPopularity(list, sort));
         }
 
 
@@ -56,7 +67,24 @@ public class DishController {
 
 //        放入redis
         redisTemplate.opsForValue().set(key, list);
-        return Result.success(list);
+        return Result.success(sortByPopularity(list, sort));
+    }
+
+    /**
+     * 按最近销量从高到低排序，销量相同时保持原有顺序
+     * 缓存中的菜品列表不排序，热度变化不需要清理缓存
+     * @param list
+     * @param sort
+     * @return
+     */
+    private List<DishVO> sortByPopularity(List<DishVO> list, String sort) {
+        if (!SORT_POPULAR.equals(sort)) {
+            return list;
+        }
+        Map<Long, Integer> salesMap = dailyStatisticsService.getRecentDishSales();
+        List<DishVO> sorted = new ArrayList<>(list);
+        sorted.sort(Comparator.comparingInt((DishVO dishVO) -> salesMap.getOrDefault(dishVO.getId(), 0)).reversed());
+        return sorted;
     }
 
 
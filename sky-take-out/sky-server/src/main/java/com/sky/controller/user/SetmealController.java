@@ -3,6 +3,7 @@ package com.sky.controller.user;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Setmeal;
 import com.sky.result.Result;
+import com.sky.service.DailyStatisticsService;
 import com.sky.service.SetmealService;
 import com.sky.vo.DishItemVO;
 import io.swagger.annotations.Api;
@@ -13,30 +14,44 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 @RestController("userSetmealController")
 @RequestMapping("/user/setmeal")
 @Api(tags = "C端-套餐浏览接口")
 public class SetmealController {
+    //按热度排序
+    private static final String SORT_POPULAR = "popular";
+
     @Autowired
     private SetmealService setmealService;
 
+    @Autowired
+    private DailyStatisticsService dailyStatisticsService;
+
     /**
      * 条件查询
      *
      * @param categoryId
+     * @param sort 排序方式，popular表示按最近销量从高到低排序，此时不使用缓存
      * @return
      */
     @GetMapping("/list")
     @ApiOperation("根据分类id查询套餐")
-    @Cacheable(cacheNames = "setmealCache",key = "#categoryId")
-    public Result<List<Setmeal>> list(Long categoryId) {
+    @Cacheable(cacheNames = "setmealCache",key = "#categoryId",condition = "#sort == null")
+    public Result<List<Setmeal>> list(Long categoryId, String sort) {
         Setmeal setmeal = new Setmeal();
         setmeal.setCategoryId(categoryId);
         setmeal.setStatus(StatusConstant.ENABLE);
 
         List<Setmeal> list = setmealService.list(setmeal);
+        if (SORT_POPULAR.equals(sort)) {
+//            按最近销量从高到低排序，销量相同时保持原有顺序
+            Map<Long, Integer> salesMap = dailyStatisticsService.getRecentSetmealSales();
+            list.sort(Comparator.comparingInt((Setmeal s) -> salesMap.getOrDefault(s.getId(), 0)).reversed());
+        }
         return Result.success(list);
     }
 
@@ -0,0 +1,51 @@
+package com.sky.event;
+
+import com.sky.entity.Orders;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单状态变更事件，新下单时原状态为null
+ * 在修改订单状态的同一线程中同步发布，监听器在状态修改的事务提交后执行（没有事务时立即执行）
+ */
+@Data
+@AllArgsConstructor
+public class OrderStatusChangedEvent {
+
+    //订单id
+    private Long orderId;
+
+    //下单时间，统计数据按下单日期归档
+    private LocalDateTime orderTime;
+
+    //订单金额
+    private BigDecimal amount;
+
+    //原状态
+    private Integer fromStatus;
+
+    //新状态
+    private Integer toStatus;
+
+    /**
+     * 新下单
+     * @param order
+     * @return
+     */
+    public static OrderStatusChangedEvent created(Orders order) {
+        return new OrderStatusChangedEvent(order.getId(), order.getOrderTime(), order.getAmount(), null, order.getStatus());
+    }
+
+    /**
+     * 订单从数据库中的状态变更为新状态
+     * @param orderDB 修改前查询到的订单
+     * @param toStatus
+     * @return
+     */
+    public static OrderStatusChangedEvent of(Orders orderDB, Integer toStatus) {
+        return new OrderStatusChangedEvent(orderDB.getId(), orderDB.getOrderTime(), orderDB.getAmount(), orderDB.getStatus(), toStatus);
+    }
+}
@@ -0,0 +1,20 @@
+package com.sky.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 新用户注册事件
+ */
+@Data
+@AllArgsConstructor
+public class UserRegisteredEvent {
+
+    //用户id
+    private Long userId;
+
+    //注册时间
+    private LocalDateTime createTime;
+}
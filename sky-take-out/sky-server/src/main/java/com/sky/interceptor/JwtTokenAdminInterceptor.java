@@ -3,9 +3,11 @@ package com.sky.interceptor;
 import com.sky.constant.JwtClaimsConstant;
 import com.sky.context.BaseContext;
 import com.sky.properties.JwtProperties;
-import com.sky.utils.JwtUtil;
+import com.sky.service.TokenRevocationService;
+import com.sky.utils.JwtTokenCache;
 import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
@@ -18,11 +20,22 @@ import javax.servlet.http.HttpServletResponse;
  */
 @Component
 @Slf4j
-public class JwtTokenAdminInterceptor implements HandlerInterceptor {
+public class JwtTokenAdminInterceptor implements HandlerInterceptor, InitializingBean {
 
     @Autowired
     private JwtProperties jwtProperties;
 
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    //已校验令牌的缓存，同一令牌的后续请求不再校验签名
+    private JwtTokenCache tokenCache;
+
+    @Override
+    public void afterPropertiesSet() {
+        tokenCache = new JwtTokenCache(jwtProperties.getAdminSecretKey(), jwtProperties.getTokenCacheSize());
+    }
+
     /**
      * 校验jwt
      *
@@ -43,22 +56,34 @@ public class JwtTokenAdminInterceptor implements HandlerInterceptor {
         String token = request.getHeader(jwtProperties.getAdminTokenName());
 
         //2、校验令牌
-        try {
-            log.info("jwt校验:{}", token);
-            Claims claims = JwtUtil.parseJWT(jwtProperties.getAdminSecretKey(), token);
-            Long empId = Long.valueOf(claims.get(JwtClaimsConstant.EMP_ID).toString());
-            log.info("当前员工id：", empId);
-
-//            将用户id存储到ThreadLocal
-            BaseContext.setCurrentId(empId);
-
-            //3、通过，放行
-            return true;
-        } catch (Exception ex) {
+        Long empId = authenticate(token);
+        if (empId == null) {
             //4、不通过，响应401状态码
             response.setStatus(401);
             return false;
         }
+
+//        将用户id存储到ThreadLocal
+        BaseContext.setCurrentId(empId);
+
+        //3、通过，放行
+        return true;
+    }
+
+    /**
+     * 校验管理端令牌，WebSocket建立连接时也使用该方法校验
+     * @param token
+     * @return 令牌有效且未被吊销时返回员工id，否则返回null
+     */
+    public Long authenticate(String token) {
+        try {
+            Claims claims = tokenCache.parse(token);
+            Long empId = Long.valueOf(claims.get(JwtClaimsConstant.EMP_ID).toString());
+            return tokenRevocationService.isRevoked(JwtClaimsConstant.EMP_ID, empId, claims) ? null : empId;
+        } catch (Exception ex) {
+            log.debug("jwt校验失败：{}", ex.getMessage());
+            return null;
+        }
     }
 
 
@@ -3,9 +3,11 @@ package com.sky.interceptor;
 import com.sky.constant.JwtClaimsConstant;
 import com.sky.context.BaseContext;
 import com.sky.properties.JwtProperties;
-import com.sky.utils.JwtUtil;
+import com.sky.service.TokenRevocationService;
+import com.sky.utils.JwtTokenCache;
 import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
@@ -20,11 +22,22 @@ import javax.servlet.http.HttpServletResponse;
  */
 @Component
 @Slf4j
-public class JwtTokenUserInterceptor implements HandlerInterceptor {
+public class JwtTokenUserInterceptor implements HandlerInterceptor, InitializingBean {
 
     @Autowired
     private JwtProperties jwtProperties;
 
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    //已校验令牌的缓存，同一令牌的后续请求不再校验签名
+    private JwtTokenCache tokenCache;
+
+    @Override
+    public void afterPropertiesSet() {
+        tokenCache = new JwtTokenCache(jwtProperties.getUserSecretKey(), jwtProperties.getTokenCacheSize());
+    }
+
     /**
      * 校验jwt
      *
@@ -46,17 +59,36 @@ public class JwtTokenUserInterceptor implements HandlerInterceptor {
 
         //2、校验令牌
         try {
-            log.info("jwt校验:{}", token);
-            Claims claims = JwtUtil.parseJWT(jwtProperties.getUserSecretKey(), token);
+            Claims claims = tokenCache.parse(token);
             Long userId = Long.valueOf(claims.get(JwtClaimsConstant.USER_ID).toString());
-            log.info("当前用户的id：", userId);
+            if (tokenRevocationService.isRevoked(JwtClaimsConstant.USER_ID, userId, claims)) {
+                response.setStatus(401);
+                return false;
+            }
             BaseContext.setCurrentId(userId);
+            //升级前签发的令牌中没有openid，每次都要设置，避免读到线程上一次请求的值
+            Object openid = claims.get(JwtClaimsConstant.OPENID);
+            BaseContext.setCurrentOpenid(openid == null ? null : openid.toString());
             //3、通过，放行
             return true;
         } catch (Exception ex) {
+            log.debug("jwt校验失败：{}", ex.getMessage());
             //4、不通过，响应401状态码
             response.setStatus(401);
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 请求结束后清除openid，避免线程池中的线程保留上一个用户的openid
+     *
+     * @param request
+     * @param response
+     * @param handler
+     * @param ex
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        BaseContext.removeCurrentOpenid();
+    }
+}
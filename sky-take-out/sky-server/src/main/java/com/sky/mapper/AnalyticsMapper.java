@@ -0,0 +1,78 @@
+package com.sky.mapper;
+
+import com.sky.dto.AnalyticsDetailDTO;
+import com.sky.dto.AnalyticsRowDTO;
+import com.sky.entity.Orders;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface AnalyticsMapper {
+
+    /**
+     * 查询时间区间内的订单，只包含分析用到的字段，按id排序
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    List<Orders> listOrders(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 查询时间区间内订单的明细
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    List<AnalyticsDetailDTO> listDetails(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 根据id查询订单，只包含分析用到的字段
+     * @param id
+     * @return
+     */
+    Orders getOrder(Long id);
+
+    /**
+     * 根据订单id查询明细
+     * @param orderId
+     * @return
+     */
+    List<AnalyticsDetailDTO> listDetailsByOrderId(Long orderId);
+
+    /**
+     * 按下单时间的小时统计
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    List<AnalyticsRowDTO> sumByHour(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 按支付方式统计
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    List<AnalyticsRowDTO> sumByPayMethod(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 按商品分类统计已完成订单
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    List<AnalyticsRowDTO> sumByCategory(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 按商品统计已完成订单，按销量降序
+     * @param begin
+     * @param end 不包含
+     * @param limit
+     * @return
+     */
+    List<AnalyticsRowDTO> sumByDish(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end,
+                                    @Param("limit") int limit);
+}
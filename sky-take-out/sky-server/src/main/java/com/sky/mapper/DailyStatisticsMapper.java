@@ -0,0 +1,91 @@
+package com.sky.mapper;
+
+import com.sky.dto.DailyStatisticsDTO;
+import com.sky.dto.DishSalesDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.OrderDetail;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface DailyStatisticsMapper {
+
+    /**
+     * 将变化量累加到汇总表，当天没有记录时插入
+     * @param delta
+     */
+    void accumulate(DailyBusinessStats delta);
+
+    /**
+     * 将订单明细的销量累加到商品销量汇总表
+     * @param statDate
+     * @param orderDetailList
+     * @param sign 1为增加，-1为扣减
+     */
+    void accumulateDishSales(@Param("statDate") LocalDate statDate,
+                             @Param("orderDetailList") List<OrderDetail> orderDetailList,
+                             @Param("sign") int sign);
+
+    /**
+     * 查询日期区间内每天的汇总数据，没有数据的日期不返回
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyStatisticsDTO> listByDate(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 汇总日期区间内的营业数据
+     * @param begin
+     * @param end
+     * @return 区间内没有数据时各字段为null
+     */
+    DailyStatisticsDTO sumByDate(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 查询日期区间内每天每个商品的销量
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DishSalesDTO> listDishSales(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 将日期区间内的汇总数据清零
+     * @param begin
+     * @param end
+     */
+    void resetByDate(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 根据订单表重新计算时间区间内的订单汇总数据
+     * @param begin
+     * @param end
+     */
+    void rebuildOrders(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 根据用户表重新计算时间区间内的新增用户数
+     * @param begin
+     * @param end
+     */
+    void rebuildUsers(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+
+    /**
+     * 删除日期区间内的商品销量汇总
+     * @param begin
+     * @param end
+     */
+    void deleteDishSales(@Param("begin") LocalDate begin, @Param("end") LocalDate end);
+
+    /**
+     * 根据订单明细重新计算时间区间内的商品销量汇总
+     * @param begin
+     * @param end
+     */
+    void rebuildDishSales(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
+}
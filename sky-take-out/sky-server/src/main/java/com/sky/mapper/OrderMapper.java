@@ -2,11 +2,14 @@ package com.sky.mapper;
 
 import com.github.pagehelper.Page;
 import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.OrderExportDTO;
 import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.dto.TimeBucketDTO;
 import com.sky.entity.Orders;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -32,6 +35,21 @@ public interface OrderMapper {
      */
     Orders getByNumberAndUserId(@Param("orderNumber") String orderNumber, @Param("userId") Long userId);
 
+    /**
+     * 根据订单号查询订单
+     * @param orderNumber
+     * @return
+     */
+    Orders getByNumber(@Param("orderNumber") String orderNumber);
+
+    /**
+     * 将待付款订单修改为已支付、待接单，已处理过的订单不会被修改
+     * @param orderNumber
+     * @param checkoutTime
+     * @return 实际修改的行数
+     */
+    int updatePaySuccess(@Param("orderNumber") String orderNumber, @Param("checkoutTime") LocalDateTime checkoutTime);
+
     /**
      * 修改订单信息
      * @param orders
@@ -86,4 +104,65 @@ public interface OrderMapper {
      * @param end
      */
     List<GoodsSalesDTO> getSalesTop10(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 根据订单号批量修改支付状态
+     * @param numbers
+     * @param payStatus
+     */
+    void updatePayStatusByNumbers(@Param("numbers") List<String> numbers, @Param("payStatus") Integer payStatus);
+
+    /**
+     * 修改订单状态，只有订单仍处于预期状态时才修改
+     * @param orders 订单id及需要修改的字段
+     * @param expectedStatus 预期的订单状态
+     * @param expectedPayStatus 预期的支付状态，为null时不限制
+     * @return 实际修改的行数
+     */
+    int updateIfStatus(@Param("orders") Orders orders, @Param("expectedStatus") Integer expectedStatus,
+                       @Param("expectedPayStatus") Integer expectedPayStatus);
+
+    /**
+     * 查询支付结果未确定的订单：超过一定时间仍待付款的订单，以及最近因支付超时被自动取消的订单
+     * @param pendingBefore
+     * @param cancelledAfter
+     * @param cancelReason 支付超时自动取消的原因
+     * @param limit
+     * @return
+     */
+    List<Orders> listUnsettledPayments(@Param("pendingBefore") LocalDateTime pendingBefore,
+                                       @Param("cancelledAfter") LocalDateTime cancelledAfter,
+                                       @Param("cancelReason") String cancelReason,
+                                       @Param("limit") int limit);
+
+    /**
+     * 按时间区间分组统计订单数量和营业额
+     * @param begin
+     * @param end 不包含
+     * @param granularity 统计粒度：HOUR、DAY、WEEK、MONTH
+     * @param status 为空时统计全部订单
+     * @return
+     */
+    List<TimeBucketDTO> sumByTimeBucket(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end,
+                                        @Param("granularity") String granularity, @Param("status") Integer status);
+
+    /**
+     * 按时间区间和商品分类分组统计订单数量和营业额
+     * @param begin
+     * @param end 不包含
+     * @param granularity 统计粒度：HOUR、DAY、WEEK、MONTH
+     * @param status 为空时统计全部订单
+     * @return
+     */
+    List<TimeBucketDTO> sumByTimeBucketAndCategory(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end,
+                                                   @Param("granularity") String granularity, @Param("status") Integer status);
+
+    /**
+     * 流式查询时间区间内的订单及明细，每个订单明细一行
+     * 结果逐行从数据库读取，必须在事务内遍历，遍历结束后关闭
+     * @param begin
+     * @param end 不包含
+     * @return
+     */
+    Cursor<OrderExportDTO> streamForExport(@Param("begin") LocalDateTime begin, @Param("end") LocalDateTime end);
 }
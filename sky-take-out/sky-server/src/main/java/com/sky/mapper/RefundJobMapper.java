@@ -0,0 +1,77 @@
+package com.sky.mapper;
+
+import com.sky.entity.RefundJob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface RefundJobMapper {
+    /**
+     * 插入退款任务，商户退款单号已存在时忽略
+     * @param refundJob
+     * @return 实际插入的行数
+     */
+    int insertIgnore(RefundJob refundJob);
+
+    /**
+     * 查询到期待处理的退款任务
+     * @param now
+     * @param limit
+     * @return
+     */
+    List<RefundJob> listDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * 抢占任务，将待处理改为处理中
+     * @param id
+     * @param now
+     * @return 抢占成功返回1
+     */
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    /**
+     * 将处理中超时的任务重新置为待处理
+     * @param before
+     * @return
+     */
+    int resetStuck(@Param("before") LocalDateTime before);
+
+    /**
+     * 修改退款任务
+     * @param refundJob
+     */
+    void update(RefundJob refundJob);
+
+    /**
+     * 微信已受理退款，将处理中的任务标记为已提交
+     * @param id
+     * @param refundId
+     * @param attempts
+     * @param now
+     * @return
+     */
+    int markSubmitted(@Param("id") Long id, @Param("refundId") String refundId,
+                      @Param("attempts") Integer attempts, @Param("now") LocalDateTime now);
+
+    /**
+     * 根据商户退款单号批量更新退款结果，已是最终状态的任务不会被修改
+     * @param outRefundNos
+     * @param status
+     * @param lastError
+     * @param now
+     * @return
+     */
+    int updateResultBatch(@Param("outRefundNos") List<String> outRefundNos, @Param("status") Integer status,
+                          @Param("lastError") String lastError, @Param("now") LocalDateTime now);
+
+    /**
+     * 查询已提交但长时间未收到退款结果的任务
+     * @param before
+     * @param limit
+     * @return
+     */
+    List<RefundJob> listSubmittedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
@@ -0,0 +1,67 @@
+package com.sky.service;
+
+import com.sky.dto.DailyStatisticsDTO;
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.event.UserRegisteredEvent;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+public interface DailyStatisticsService {
+
+    /**
+     * 订单状态变更提交后增量更新每日汇总数据
+     * @param event
+     */
+    void onOrderStatusChanged(OrderStatusChangedEvent event);
+
+    /**
+     * 订单状态变更提交后，清除该订单所在日期的汇总数据缓存
+     * @param event
+     */
+    void onOrderStatusCommitted(OrderStatusChangedEvent event);
+
+    /**
+     * 新用户注册时增量更新每日新增用户数
+     * @param event
+     */
+    void onUserRegistered(UserRegisteredEvent event);
+
+    /**
+     * 根据原始数据重新计算日期区间内的汇总数据，修正增量更新的遗漏
+     * @param begin
+     * @param end
+     */
+    void repair(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询日期区间内每天的汇总数据，已结束且不再变化的日期优先读取缓存
+     * @param begin
+     * @param end
+     * @return 没有数据的日期可能不返回，也可能返回各字段为null的记录
+     */
+    List<DailyStatisticsDTO> listByDate(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询日期区间内的商品销量排名
+     * @param begin
+     * @param end
+     * @param limit
+     * @return
+     */
+    List<GoodsSalesDTO> getSalesTop(LocalDate begin, LocalDate end, int limit);
+
+    /**
+     * 最近一段时间每个菜品的销量
+     * @return key为菜品id
+     */
+    Map<Long, Integer> getRecentDishSales();
+
+    /**
+     * 最近一段时间每个套餐的销量
+     * @return key为套餐id
+     */
+    Map<Long, Integer> getRecentSetmealSales();
+}
@@ -0,0 +1,26 @@
+package com.sky.service;
+
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.vo.DashboardMinuteVO;
+
+import java.util.List;
+
+public interface DashboardService {
+
+    /**
+     * 订单状态变更提交后记录实时指标
+     * @param event
+     */
+    void onOrderStatusCommitted(OrderStatusChangedEvent event);
+
+    /**
+     * 推送上次推送之后的指标增量
+     */
+    void pushChanges();
+
+    /**
+     * 查询最近的每分钟指标
+     * @return
+     */
+    List<DashboardMinuteVO> getRecentMinutes();
+}
@@ -0,0 +1,59 @@
+package com.sky.service;
+
+import com.sky.dto.ExportJobDTO;
+import com.sky.vo.ExportJobVO;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
+
+public interface ExportJobService {
+
+    /**
+     * 提交导出任务，任务在导出线程池中执行，文件生成后凭token下载
+     * @param exportJobDTO
+     * @return
+     */
+    ExportJobVO submit(ExportJobDTO exportJobDTO);
+
+    /**
+     * 查询导出任务
+     * @param token
+     * @return
+     */
+    ExportJobVO getJob(String token);
+
+    /**
+     * 下载导出任务生成的文件
+     * @param token
+     * @param response
+     * @throws IOException
+     */
+    void download(String token, HttpServletResponse response) throws IOException;
+
+    /**
+     * 直接导出csv格式的订单明细，边查询边输出
+     * @param begin
+     * @param end
+     * @param response
+     * @throws IOException
+     */
+    void exportOrders(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException;
+
+    /**
+     * 导出近30天的运营数据报表，优先使用每晚预先生成的文件
+     * @param response
+     * @throws IOException
+     */
+    void exportDefault(HttpServletResponse response) throws IOException;
+
+    /**
+     * 预先生成近30天的运营数据报表
+     */
+    void prebuildDefault();
+
+    /**
+     * 清理过期的导出任务和文件
+     */
+    void cleanExpired();
+}
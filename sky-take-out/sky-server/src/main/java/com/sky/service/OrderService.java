@@ -7,6 +7,8 @@ import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface OrderService {
 
     /**
@@ -14,7 +16,7 @@ public interface OrderService {
      * @param ordersSubmitDTO
      * @return
      */
-    OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO);
+    CompletableFuture<OrderSubmitVO> submitOrder(OrdersSubmitDTO ordersSubmitDTO);
 
     /**
      * 订单支付
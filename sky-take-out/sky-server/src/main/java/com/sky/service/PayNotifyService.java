@@ -0,0 +1,33 @@
+package com.sky.service;
+
+public interface PayNotifyService {
+
+    /**
+     * 接收支付成功通知，按微信支付交易号去重后异步处理
+     * @param outTradeNo 商户订单号
+     * @param transactionId 微信支付交易号
+     */
+    void acceptPaySuccess(String outTradeNo, String transactionId);
+
+    /**
+     * 接收退款结果通知，按微信支付退款单号去重后放入待写入队列
+     * @param outTradeNo 商户订单号
+     * @param outRefundNo 商户退款单号
+     * @param refundId 微信支付退款单号
+     * @param refundStatus 退款状态 SUCCESS退款成功 CLOSED退款关闭 ABNORMAL退款异常
+     */
+    void acceptRefundResult(String outTradeNo, String outRefundNo, String refundId, String refundStatus);
+
+    /**
+     * 不经去重直接放入待写入队列，供对账任务使用
+     * @param outTradeNo
+     * @param outRefundNo
+     * @param refundStatus
+     */
+    void submitRefundResult(String outTradeNo, String outRefundNo, String refundStatus);
+
+    /**
+     * 将队列中的退款结果批量写入数据库
+     */
+    void flushRefundResults();
+}
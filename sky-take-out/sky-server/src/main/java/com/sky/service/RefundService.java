@@ -0,0 +1,17 @@
+package com.sky.service;
+
+import com.sky.entity.Orders;
+
+public interface RefundService {
+
+    /**
+     * 提交退款申请，只写入退款任务表，由后台工作线程异步调用微信支付退款接口
+     * @param orders
+     */
+    void submit(Orders orders);
+
+    /**
+     * 拉取到期的退款任务并交给工作线程处理
+     */
+    void processDueJobs();
+}
@@ -1,11 +1,16 @@
 package com.sky.service;
 
+import com.sky.dto.TimeSeriesQueryDTO;
+import com.sky.vo.OrderAnalyticsVO;
 import com.sky.vo.OrderReportVO;
 import com.sky.vo.SalesTop10ReportVO;
+import com.sky.vo.TimeSeriesVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 
 public interface ReportService {
@@ -33,6 +38,21 @@ public interface ReportService {
      */
     OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end);
 
+    /**
+     * 按小时、天、周、月统计订单数量和营业额，可按订单状态过滤、按分类统计
+     * @param timeSeriesQueryDTO
+     * @return
+     */
+    TimeSeriesVO getTimeSeries(TimeSeriesQueryDTO timeSeriesQueryDTO);
+
+    /**
+     * 订单分析：按小时、支付方式、分类、商品统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    OrderAnalyticsVO getOrderAnalytics(LocalDate begin, LocalDate end);
+
     /**
      * 查询指定时间区间内的销量排名top10
      * @param begin
@@ -46,4 +66,13 @@ public interface ReportService {
      * @param response
      **/
     void exportBusinessData(HttpServletResponse response);
+
+    /**
+     * 生成指定时间区间的运营数据报表
+     * @param begin
+     * @param end
+     * @param out
+     * @throws IOException
+     */
+    void writeBusinessDataExcel(LocalDate begin, LocalDate end, OutputStream out) throws IOException;
 }
@@ -0,0 +1,14 @@
+package com.sky.service;
+
+import com.sky.dto.TimeSeriesQueryDTO;
+import com.sky.vo.TimeSeriesVO;
+
+public interface TimeSeriesService {
+
+    /**
+     * 按时间区间统计订单数量和营业额
+     * @param timeSeriesQueryDTO
+     * @return
+     */
+    TimeSeriesVO aggregate(TimeSeriesQueryDTO timeSeriesQueryDTO);
+}
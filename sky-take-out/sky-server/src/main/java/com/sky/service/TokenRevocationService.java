@@ -0,0 +1,27 @@
+package com.sky.service;
+
+import io.jsonwebtoken.Claims;
+
+public interface TokenRevocationService {
+
+    /**
+     * 吊销指定主体在此之前签发的所有令牌
+     * @param subjectClaim 主体的claim名称，如JwtClaimsConstant.EMP_ID
+     * @param id
+     */
+    void revoke(String subjectClaim, Long id);
+
+    /**
+     * 判断令牌是否已被吊销，只查询本地的吊销记录
+     * @param subjectClaim
+     * @param id
+     * @param claims
+     * @return
+     */
+    boolean isRevoked(String subjectClaim, Long id, Claims claims);
+
+    /**
+     * 从redis全量同步吊销记录，并删除已超过令牌有效期的记录
+     */
+    void sync();
+}
@@ -3,11 +3,20 @@ package com.sky.service;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface UserService {
     /**
      * 微信登录
      * @param userLoginDTO
      * @return
      */
-    User wxLogin(UserLoginDTO userLoginDTO);
+    CompletableFuture<User> wxLogin(UserLoginDTO userLoginDTO);
+
+    /**
+     * 查询用户的openid，优先从本地缓存读取
+     * @param userId
+     * @return
+     */
+    String getOpenid(Long userId);
 }
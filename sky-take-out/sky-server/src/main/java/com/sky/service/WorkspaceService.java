@@ -4,6 +4,7 @@ import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import com.sky.vo.WorkspaceOverViewVO;
 
 import java.time.LocalDateTime;
 
@@ -33,4 +34,10 @@ public interface WorkspaceService {
      * @return
      */
     SetmealOverViewVO getSetmealOverView();
+
+    /**
+     * 查询工作台全部数据
+     * @return
+     */
+    WorkspaceOverViewVO getOverView();
 }
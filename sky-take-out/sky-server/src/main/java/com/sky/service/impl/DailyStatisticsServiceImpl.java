@@ -0,0 +1,456 @@
+package com.sky.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.dto.DailyStatisticsDTO;
+import com.sky.dto.DishSalesDTO;
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.event.UserRegisteredEvent;
+import com.sky.mapper.DailyStatisticsMapper;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.service.DailyStatisticsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 每日营业数据汇总
+ * 汇总数据更新失败只记录日志，不影响订单业务，由每晚的修正任务根据原始数据重新计算
+ * 已结束且超过可变天数的日期，汇总数据基本不再变化，按天缓存在redis中；迟到的状态变更（如已完成订单被取消）提交后清除对应日期的缓存
+ */
+@Service
+@Slf4j
+public class DailyStatisticsServiceImpl implements DailyStatisticsService {
+
+    @Autowired
+    private DailyStatisticsMapper dailyStatisticsMapper;
+
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
+    @Autowired
+    private TaskScheduler taskScheduler;
+
+    //商品热度
+    private volatile Popularity popularity;
+
+    /**
+     * 订单状态变更提交后增量更新每日汇总数据
+     * 同一天的订单都更新同一行汇总数据，在订单事务中更新会让所有订单的状态变更争用这一行的行锁，
+     * 因此在订单事务提交后用单独的短事务更新；提交后、更新前宕机丢失的增量由每晚的修正任务补齐
+     * @param event
+     */
+    @Override
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        if (event.getOrderTime() == null || event.getToStatus() == null || event.getToStatus().equals(event.getFromStatus())) {
+            return;
+        }
+        try {
+            LocalDate statDate = event.getOrderTime().toLocalDate();
+            DailyBusinessStats delta = DailyBusinessStats.builder()
+                    .statDate(statDate)
+                    .updateTime(LocalDateTime.now())
+                    .build();
+            if (event.getFromStatus() == null) {
+                delta.setOrderCount(1);
+            } else {
+                addStatusCount(delta, event.getFromStatus(), -1);
+            }
+            addStatusCount(delta, event.getToStatus(), 1);
+
+//            完成的订单计入营业额和商品销量，已完成的订单被改为其他状态时扣减
+            int sign = 0;
+            if (Orders.COMPLETED.equals(event.getToStatus())) {
+                sign = 1;
+            } else if (Orders.COMPLETED.equals(event.getFromStatus())) {
+                sign = -1;
+            }
+            if (sign != 0) {
+                BigDecimal amount = event.getAmount() == null ? BigDecimal.ZERO : event.getAmount();
+                delta.setValidOrderCount(sign);
+                delta.setTurnover(sign > 0 ? amount : amount.negate());
+                List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(event.getOrderId());
+                if (orderDetailList != null && !orderDetailList.isEmpty()) {
+                    dailyStatisticsMapper.accumulateDishSales(statDate, orderDetailList, sign);
+                }
+            }
+            dailyStatisticsMapper.accumulate(delta);
+        } catch (Exception e) {
+            log.error("更新每日营业数据失败，订单id：{}", event.getOrderId(), e);
+        }
+    }
+
+    /**
+     * 订单状态变更提交后，清除该订单所在日期的汇总数据缓存
+     * 在事务提交、汇总数据更新后执行，避免并发查询把更新前的旧数据重新写入缓存
+     * @param event
+     */
+    @Override
+    @Order(2)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusCommitted(OrderStatusChangedEvent event) {
+        if (event.getOrderTime() == null) {
+            return;
+        }
+        LocalDate statDate = event.getOrderTime().toLocalDate();
+        if (statDate.isAfter(getSettledEnd())) {
+            return;
+        }
+        evictSettled(statDate);
+        log.info("已结束日期的订单状态变更，清除汇总数据缓存：{}", statDate);
+//        清除前已读到旧数据的查询可能在清除后才写入缓存，延迟一段时间再清除一次；仍未清除的旧数据在缓存过期后失效
+        taskScheduler.schedule(() -> evictSettled(statDate),
+                Instant.now().plusMillis(reportProperties.getDailyCacheEvictDelay()));
+    }
+
+    private void evictSettled(LocalDate statDate) {
+        try {
+            stringRedisTemplate.delete(Arrays.asList(
+                    reportProperties.getDailyCacheKey() + statDate,
+                    reportProperties.getDishSalesCacheKey() + statDate));
+        } catch (Exception e) {
+            log.error("清除每日营业数据缓存失败：{}", statDate, e);
+        }
+    }
+
+    /**
+     * 新用户注册时增量更新每日新增用户数
+     * @param event
+     */
+    @Override
+    @EventListener
+    public void onUserRegistered(UserRegisteredEvent event) {
+        LocalDateTime createTime = event.getCreateTime() == null ? LocalDateTime.now() : event.getCreateTime();
+        try {
+            dailyStatisticsMapper.accumulate(DailyBusinessStats.builder()
+                    .statDate(createTime.toLocalDate())
+                    .newUsers(1)
+                    .updateTime(LocalDateTime.now())
+                    .build());
+        } catch (Exception e) {
+            log.error("更新每日新增用户数失败，用户id：{}", event.getUserId(), e);
+        }
+    }
+
+    /**
+     * 根据原始数据重新计算日期区间内的汇总数据
+     * @param begin
+     * @param end
+     */
+    @Override
+    @Transactional
+    public void repair(LocalDate begin, LocalDate end) {
+        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
+        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
+
+//        先清零再重新计算，原始数据已被删除的日期也能修正为0
+        dailyStatisticsMapper.resetByDate(begin, end);
+        dailyStatisticsMapper.rebuildOrders(beginTime, endTime);
+        dailyStatisticsMapper.rebuildUsers(beginTime, endTime);
+
+        dailyStatisticsMapper.deleteDishSales(begin, end);
+        dailyStatisticsMapper.rebuildDishSales(beginTime, endTime);
+        log.info("每日营业数据修正完成：{}至{}", begin, end);
+    }
+
+    /**
+     * 查询日期区间内每天的汇总数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public List<DailyStatisticsDTO> listByDate(LocalDate begin, LocalDate end) {
+        return listByDate(reportProperties.getDailyCacheKey(), begin, end, DailyStatisticsDTO.class,
+                dailyStatisticsMapper::listByDate, DailyStatisticsDTO::getDate);
+    }
+
+    /**
+     * 查询日期区间内的商品销量排名
+     * 每天的商品销量计数合并后，用容量为limit的小顶堆选出销量最高的商品
+     * @param begin
+     * @param end
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<GoodsSalesDTO> getSalesTop(LocalDate begin, LocalDate end, int limit) {
+        Map<String, Integer> salesMap = new HashMap<>();
+        for (DishSalesDTO dishSales : listDishSales(begin, end)) {
+            salesMap.merge(dishSales.getName(), dishSales.getNumber(), Integer::sum);
+        }
+
+        PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<String, Integer> entry : salesMap.entrySet()) {
+            if (entry.getValue() <= 0) {
+                continue;
+            }
+            heap.offer(entry);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+
+        LinkedList<GoodsSalesDTO> goodsSalesDTOList = new LinkedList<>();
+        while (!heap.isEmpty()) {
+            Map.Entry<String, Integer> entry = heap.poll();
+            goodsSalesDTOList.addFirst(new GoodsSalesDTO(entry.getKey(), entry.getValue()));
+        }
+        return goodsSalesDTOList;
+    }
+
+    /**
+     * 最近一段时间每个菜品的销量，用于用户端按热度排序
+     * @return key为菜品id
+     */
+    @Override
+    public Map<Long, Integer> getRecentDishSales() {
+        return getPopularity().dishSales;
+    }
+
+    /**
+     * 最近一段时间每个套餐的销量，用于用户端按热度排序
+     * @return key为套餐id
+     */
+    @Override
+    public Map<Long, Integer> getRecentSetmealSales() {
+        return getPopularity().setmealSales;
+    }
+
+    /**
+     * 获取商品热度，超过刷新间隔后重新统计
+     * 用户端菜单访问频繁，热度在本地保存一段时间，不需要每次都读取缓存和数据库
+     * @return
+     */
+    private Popularity getPopularity() {
+        Popularity current = popularity;
+        if (current != null && System.currentTimeMillis() < current.expireAt) {
+            return current;
+        }
+        synchronized (this) {
+            if (popularity != null && System.currentTimeMillis() < popularity.expireAt) {
+                return popularity;
+            }
+            Map<Long, Integer> dishSales = new HashMap<>();
+            Map<Long, Integer> setmealSales = new HashMap<>();
+            try {
+                LocalDate end = LocalDate.now();
+                for (DishSalesDTO sales : listDishSales(end.minusDays(reportProperties.getPopularDays() - 1), end)) {
+                    if (sales.getDishId() != null) {
+                        dishSales.merge(sales.getDishId(), sales.getNumber(), Integer::sum);
+                    } else if (sales.getSetmealId() != null) {
+                        setmealSales.merge(sales.getSetmealId(), sales.getNumber(), Integer::sum);
+                    }
+                }
+            } catch (Exception e) {
+                //统计失败时沿用上一次的结果，没有结果时不排序
+                log.error("统计商品热度失败", e);
+                if (popularity != null) {
+                    dishSales = popularity.dishSales;
+                    setmealSales = popularity.setmealSales;
+                }
+            }
+            popularity = new Popularity(dishSales, setmealSales,
+                    System.currentTimeMillis() + reportProperties.getPopularRefreshInterval());
+            return popularity;
+        }
+    }
+
+    /**
+     * 查询日期区间内每天每个商品的销量
+     * @param begin
+     * @param end
+     * @return
+     */
+    private List<DishSalesDTO> listDishSales(LocalDate begin, LocalDate end) {
+        return listByDate(reportProperties.getDishSalesCacheKey(), begin, end, DishSalesDTO.class,
+                dailyStatisticsMapper::listDishSales, DishSalesDTO::getStatDate);
+    }
+
+    /**
+     * 查询日期区间内每天的数据，已结束且不再变化的日期读取缓存，今天和最近仍可能变化的日期直接查询汇总表
+     * @param key 缓存key的前缀，加上日期为当天数据的key，value为当天数据的json数组
+     * @param begin
+     * @param end
+     * @param clazz
+     * @param loader 查询汇总表
+     * @param dateGetter 获取数据所属日期
+     * @param <T>
+     * @return
+     */
+    private <T> List<T> listByDate(String key, LocalDate begin, LocalDate end, Class<T> clazz,
+                                   BiFunction<LocalDate, LocalDate, List<T>> loader, Function<T, LocalDate> dateGetter) {
+        LocalDate settledEnd = getSettledEnd();
+        List<T> list = new ArrayList<>();
+
+        if (!begin.isAfter(settledEnd)) {
+            list.addAll(listSettled(key, begin, end.isBefore(settledEnd) ? end : settledEnd, clazz, loader, dateGetter));
+        }
+
+        LocalDate mutableBegin = begin.isAfter(settledEnd) ? begin : settledEnd.plusDays(1);
+        if (!mutableBegin.isAfter(end)) {
+            list.addAll(loader.apply(mutableBegin, end));
+        }
+        return list;
+    }
+
+    /**
+     * 查询已结束日期的数据，缓存中没有的日期一次查询汇总表后写入缓存
+     */
+    private <T> List<T> listSettled(String key, LocalDate begin, LocalDate end, Class<T> clazz,
+                                    BiFunction<LocalDate, LocalDate, List<T>> loader, Function<T, LocalDate> dateGetter) {
+        List<String> keys = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            keys.add(key + date);
+        }
+
+        List<String> cachedList;
+        try {
+            cachedList = stringRedisTemplate.opsForValue().multiGet(keys);
+        } catch (Exception e) {
+            log.warn("读取统计数据缓存{}失败：{}", key, e.getMessage());
+            return loader.apply(begin, end);
+        }
+
+        List<T> list = new ArrayList<>();
+        LocalDate missBegin = null;
+        LocalDate missEnd = null;
+        for (int i = 0; i < keys.size(); i++) {
+            String cached = cachedList.get(i);
+            if (cached != null) {
+                list.addAll(JSON.parseArray(cached, clazz));
+                continue;
+            }
+            LocalDate date = begin.plusDays(i);
+            if (missBegin == null) {
+                missBegin = date;
+            }
+            missEnd = date;
+        }
+        if (missBegin == null) {
+            return list;
+        }
+
+        Map<LocalDate, List<T>> loadedMap = new HashMap<>();
+        for (T item : loader.apply(missBegin, missEnd)) {
+            loadedMap.computeIfAbsent(dateGetter.apply(item), d -> new ArrayList<>()).add(item);
+        }
+//        没有数据的日期也写入缓存，避免反复查询
+        Map<String, String> toCache = new HashMap<>();
+        for (LocalDate date = missBegin; !date.isAfter(missEnd); date = date.plusDays(1)) {
+            int index = (int) (date.toEpochDay() - begin.toEpochDay());
+            if (cachedList.get(index) != null) {
+                continue;
+            }
+            List<T> items = loadedMap.getOrDefault(date, Collections.emptyList());
+            list.addAll(items);
+            toCache.put(key + date, JSON.toJSONString(items));
+        }
+        try {
+            Expiration expiration = Expiration.milliseconds(reportProperties.getDailyCacheTtl());
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                toCache.forEach((cacheKey, value) -> connection.stringCommands().set(
+                        cacheKey.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8),
+                        expiration, RedisStringCommands.SetOption.UPSERT));
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("写入统计数据缓存{}失败：{}", key, e.getMessage());
+        }
+        return list;
+    }
+
+    /**
+     * 最后一个已结束且不再变化的日期，在此之后的日期仍由增量更新和每晚修正任务维护
+     * @return
+     */
+    private LocalDate getSettledEnd() {
+        return LocalDate.now().minusDays(reportProperties.getMutableDays() + 1);
+    }
+
+    /**
+     * 按订单状态累加对应的状态订单数
+     * @param delta
+     * @param status
+     * @param count
+     */
+    private void addStatusCount(DailyBusinessStats delta, Integer status, int count) {
+        switch (status) {
+            case 1:
+                delta.setPendingPaymentCount(delta.getPendingPaymentCount() + count);
+                break;
+            case 2:
+                delta.setToBeConfirmedCount(delta.getToBeConfirmedCount() + count);
+                break;
+            case 3:
+                delta.setConfirmedCount(delta.getConfirmedCount() + count);
+                break;
+            case 4:
+                delta.setDeliveryInProgressCount(delta.getDeliveryInProgressCount() + count);
+                break;
+            case 5:
+                delta.setCompletedCount(delta.getCompletedCount() + count);
+                break;
+            case 6:
+                delta.setCancelledCount(delta.getCancelledCount() + count);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 最近一段时间的商品销量
+     */
+    private static class Popularity {
+        private final Map<Long, Integer> dishSales;
+        private final Map<Long, Integer> setmealSales;
+        private final long expireAt;
+
+        private Popularity(Map<Long, Integer> dishSales, Map<Long, Integer> setmealSales, long expireAt) {
+            this.dishSales = dishSales;
+            this.setmealSales = setmealSales;
+            this.expireAt = expireAt;
+        }
+    }
+}
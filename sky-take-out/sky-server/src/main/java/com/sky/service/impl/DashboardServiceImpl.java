@@ -0,0 +1,238 @@
+package com.sky.service.impl;
+
+import com.sky.constant.WebSocketConstant;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangedEvent;
+import com.sky.properties.ReportProperties;
+import com.sky.service.DashboardService;
+import com.sky.vo.DashboardMinuteVO;
+import com.sky.websocket.WebSocketServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 工作台实时指标
+ * 订单状态变更提交后按分钟累计到redis，定时把本节点上次推送之后的增量推送给订阅了工作台主题的管理端，
+ * 管理端打开工作台时查询一次统计数据，之后只累加推送的增量，不再定时轮询，数据库压力与打开工作台的人数无关
+ * 集群部署时各节点的增量都会推送给所有管理端，最近每分钟的指标由各节点写入同一个redis哈希，查询到的是整个集群的数据
+ */
+@Service
+@Slf4j
+public class DashboardServiceImpl implements DashboardService {
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //本节点上次推送之后的增量，key为分钟数
+    private Map<Long, MinuteMetrics> pending = new TreeMap<>();
+
+    /**
+     * 订单状态变更提交后记录实时指标，回滚的变更不计入
+     * @param event
+     */
+    @Override
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusCommitted(OrderStatusChangedEvent event) {
+        if (event.getToStatus() == null || event.getToStatus().equals(event.getFromStatus())) {
+            return;
+        }
+        long minute = currentMinute();
+        boolean today = event.getOrderTime() != null && event.getOrderTime().toLocalDate().equals(LocalDate.now());
+        synchronized (this) {
+            pending.computeIfAbsent(minute, MinuteMetrics::new).apply(event, today);
+        }
+
+        //本次变更的增量累加到该分钟的redis哈希中，保留时间比查询的分钟数多一分钟
+        MinuteMetrics delta = new MinuteMetrics(minute);
+        delta.apply(event, today);
+        byte[] key = getMinuteKey(minute);
+        long ttl = (Math.max(1, reportProperties.getDashboardMinutes()) + 1) * 60L;
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                delta.toFields().forEach((field, value) ->
+                        connection.hashCommands().hIncrBy(key, field.getBytes(StandardCharsets.UTF_8), value));
+                connection.keyCommands().expire(key, ttl);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("记录工作台实时指标失败，订单id：{}", event.getOrderId(), e);
+        }
+    }
+
+    /**
+     * 推送上次推送之后的指标增量，没有变化时不推送
+     */
+    @Override
+    public void pushChanges() {
+        List<DashboardMinuteVO> minutes = new ArrayList<>();
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            pending.values().forEach(metrics -> minutes.add(metrics.toVO()));
+            pending = new TreeMap<>();
+        }
+
+        Map map = new HashMap();
+        map.put("type", WebSocketConstant.TYPE_DASHBOARD);
+        map.put("minutes", minutes);
+        webSocketServer.sendToTopic(WebSocketConstant.TOPIC_DASHBOARD, map);
+    }
+
+    /**
+     * 查询整个集群最近的每分钟指标，按时间升序，没有数据的分钟不返回
+     * @return
+     */
+    @Override
+    public List<DashboardMinuteVO> getRecentMinutes() {
+        long now = currentMinute();
+        long first = now - Math.max(1, reportProperties.getDashboardMinutes()) + 1;
+        List<Object> hashes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long minute = first; minute <= now; minute++) {
+                connection.hashCommands().hGetAll(getMinuteKey(minute));
+            }
+            return null;
+        });
+
+        List<DashboardMinuteVO> minutes = new ArrayList<>();
+        for (int i = 0; i < hashes.size(); i++) {
+            Map<String, String> hash = (Map<String, String>) hashes.get(i);
+            if (hash != null && !hash.isEmpty()) {
+                minutes.add(MinuteMetrics.toVO(first + i, hash));
+            }
+        }
+        return minutes;
+    }
+
+    private byte[] getMinuteKey(long minute) {
+        return (reportProperties.getDashboardKeyPrefix() + minute).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60000;
+    }
+
+    /**
+     * 一分钟内的指标累计，由外层加锁保护
+     * 写入redis时营业额以分为单位保存，订单状态的变化保存为status:状态的字段
+     */
+    private static class MinuteMetrics {
+        private static final String STATUS_FIELD_PREFIX = "status:";
+
+        private final long minute;
+        private int newOrders;
+        private int paidOrders;
+        private int completedOrders;
+        private int cancelledOrders;
+        private BigDecimal turnover = BigDecimal.ZERO;
+        private final Map<Integer, Integer> statusChanges = new HashMap<>();
+
+        MinuteMetrics(long minute) {
+            this.minute = minute;
+        }
+
+        void apply(OrderStatusChangedEvent event, boolean today) {
+            Integer from = event.getFromStatus();
+            Integer to = event.getToStatus();
+            BigDecimal amount = event.getAmount() == null ? BigDecimal.ZERO : event.getAmount();
+
+            if (from == null) {
+                newOrders++;
+            }
+            if (Orders.PENDING_PAYMENT.equals(from) && Orders.TO_BE_CONFIRMED.equals(to)) {
+                paidOrders++;
+            }
+            if (Orders.COMPLETED.equals(to)) {
+                completedOrders++;
+                turnover = turnover.add(amount);
+            }
+            if (Orders.COMPLETED.equals(from)) {
+                completedOrders--;
+                turnover = turnover.subtract(amount);
+            }
+            if (Orders.CANCELLED.equals(to)) {
+                cancelledOrders++;
+            }
+            //工作台的订单管理数据只统计今天下的订单
+            if (today) {
+                if (from != null) {
+                    statusChanges.merge(from, -1, Integer::sum);
+                }
+                statusChanges.merge(to, 1, Integer::sum);
+            }
+        }
+
+        DashboardMinuteVO toVO() {
+            return DashboardMinuteVO.builder()
+                    .minute(minute)
+                    .newOrders(newOrders)
+                    .paidOrders(paidOrders)
+                    .completedOrders(completedOrders)
+                    .cancelledOrders(cancelledOrders)
+                    .turnover(turnover)
+                    .statusChanges(new HashMap<>(statusChanges))
+                    .build();
+        }
+
+        /**
+         * 不为0的指标，key为redis哈希的字段
+         */
+        Map<String, Long> toFields() {
+            Map<String, Long> fields = new HashMap<>();
+            putIfNotZero(fields, "newOrders", newOrders);
+            putIfNotZero(fields, "paidOrders", paidOrders);
+            putIfNotZero(fields, "completedOrders", completedOrders);
+            putIfNotZero(fields, "cancelledOrders", cancelledOrders);
+            putIfNotZero(fields, "turnover", turnover.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue());
+            statusChanges.forEach((status, count) -> putIfNotZero(fields, STATUS_FIELD_PREFIX + status, count));
+            return fields;
+        }
+
+        private static void putIfNotZero(Map<String, Long> fields, String field, long value) {
+            if (value != 0) {
+                fields.put(field, value);
+            }
+        }
+
+        /**
+         * 根据redis中一分钟的哈希生成指标
+         */
+        static DashboardMinuteVO toVO(long minute, Map<String, String> hash) {
+            Map<Integer, Integer> statusChanges = new HashMap<>();
+            hash.forEach((field, value) -> {
+                if (field.startsWith(STATUS_FIELD_PREFIX)) {
+                    statusChanges.put(Integer.valueOf(field.substring(STATUS_FIELD_PREFIX.length())), Integer.valueOf(value));
+                }
+            });
+            return DashboardMinuteVO.builder()
+                    .minute(minute)
+                    .newOrders(Integer.valueOf(hash.getOrDefault("newOrders", "0")))
+                    .paidOrders(Integer.valueOf(hash.getOrDefault("paidOrders", "0")))
+                    .completedOrders(Integer.valueOf(hash.getOrDefault("completedOrders", "0")))
+                    .cancelledOrders(Integer.valueOf(hash.getOrDefault("cancelledOrders", "0")))
+                    .turnover(BigDecimal.valueOf(Long.parseLong(hash.getOrDefault("turnover", "0")), 2))
+                    .statusChanges(statusChanges)
+                    .build();
+        }
+    }
+}
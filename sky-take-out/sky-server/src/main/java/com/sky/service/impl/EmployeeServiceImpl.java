@@ -2,6 +2,7 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.constant.JwtClaimsConstant;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.PasswordConstant;
 import com.sky.constant.StatusConstant;
@@ -16,6 +17,7 @@ import com.sky.exception.PasswordErrorException;
 import com.sky.mapper.EmployeeMapper;
 import com.sky.result.PageResult;
 import com.sky.service.EmployeeService;
+import com.sky.service.TokenRevocationService;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -30,6 +32,9 @@ public class EmployeeServiceImpl implements EmployeeService {
     @Autowired
     private EmployeeMapper employeeMapper;
 
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
     /**
      * 员工登录
      *
@@ -118,7 +123,7 @@ public class EmployeeServiceImpl implements EmployeeService {
     }
 
     /**
-     * 启用禁用员工账户
+     * 启用禁用员工账户，禁用时吊销该员工已签发的令牌，立即生效
      * @param status
      * @param id
      */
@@ -129,6 +134,10 @@ public class EmployeeServiceImpl implements EmployeeService {
                 .id(id)
                 .build();
         employeeMapper.update(employee);
+
+        if (StatusConstant.DISABLE.equals(status)) {
+            tokenRevocationService.revoke(JwtClaimsConstant.EMP_ID, id);
+        }
     }
 
     /**
@@ -0,0 +1,542 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.context.BaseContext;
+import com.sky.dto.ExportJobDTO;
+import com.sky.dto.OrderExportDTO;
+import com.sky.entity.ExportJob;
+import com.sky.exception.ExportJobException;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.service.ExportJobService;
+import com.sky.service.ReportService;
+import com.sky.vo.ExportJobVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 报表导出任务
+ * 任务在有界的导出线程池中执行，文件写入导出目录，凭token下载
+ * 任务信息保存在redis中，导出目录为各节点共享的目录，查询和下载请求可以由集群中任意节点处理；只有提交人可以查询和下载
+ */
+@Service
+@Slf4j
+public class ExportJobServiceImpl implements ExportJobService, InitializingBean {
+    private static final String EXCEL_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    private static final String CSV_CONTENT_TYPE = "text/csv;charset=UTF-8";
+    //xlsx单个工作表的最大行数
+    private static final int EXCEL_MAX_ROWS = 1048576;
+    private static final String[] ORDER_TITLES = {"订单号", "订单状态", "下单时间", "结账时间", "支付方式", "收货人", "手机号",
+            "地址", "订单金额", "备注", "商品名称", "口味", "数量", "单价"};
+    private static final int ORDER_AMOUNT_COLUMN = 8;
+    private static final int DISH_NUMBER_COLUMN = 12;
+    private static final int DISH_AMOUNT_COLUMN = 13;
+    private static final String[] ORDER_STATUS = {"", "待付款", "待接单", "已接单", "派送中", "已完成", "已取消"};
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    //预先生成报表的锁key前缀，加上报表的结束日期为完整的key，同一天只有一个节点生成
+    private static final String PREBUILD_LOCK_KEY = "export:prebuild:";
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("exportExecutor")
+    private Executor exportExecutor;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    //读取订单明细的只读事务，游标在事务内逐行读取
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    //同时读取订单明细的导出数，后台任务和直接导出共用，每个导出在整个过程中占用一个数据库连接
+    private Semaphore exportPermits;
+
+    @Override
+    public void afterPropertiesSet() {
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+        exportPermits = new Semaphore(reportProperties.getExportWorkers());
+    }
+
+    /**
+     * 提交导出任务
+     * @param exportJobDTO
+     * @return
+     */
+    @Override
+    public ExportJobVO submit(ExportJobDTO exportJobDTO) {
+        Integer type = exportJobDTO.getType();
+        LocalDate begin = exportJobDTO.getBegin();
+        LocalDate end = exportJobDTO.getEnd();
+        String format = exportJobDTO.getFormat() == null ? ExportJob.FORMAT_XLSX : exportJobDTO.getFormat();
+        if (!ExportJob.TYPE_BUSINESS.equals(type) && !ExportJob.TYPE_ORDERS.equals(type)
+                || !ExportJob.FORMAT_XLSX.equals(format) && !ExportJob.FORMAT_CSV.equals(format)
+                || ExportJob.TYPE_BUSINESS.equals(type) && !ExportJob.FORMAT_XLSX.equals(format)) {
+            throw new ExportJobException(MessageConstant.EXPORT_TYPE_INVALID);
+        }
+        checkRange(begin, end);
+
+        String title = ExportJob.TYPE_BUSINESS.equals(type) ? "运营数据报表" : "订单明细";
+        ExportJob job = ExportJob.builder()
+                .token(UUID.randomUUID().toString().replace("-", ""))
+                .type(type)
+                .begin(begin)
+                .end(end)
+                .format(format)
+                .status(ExportJob.PENDING)
+                .fileName(title + begin + "至" + end + "." + format)
+                .createUser(BaseContext.getCurrentId())
+                .createTime(LocalDateTime.now())
+                .build();
+        saveJob(job);
+
+        try {
+            exportExecutor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            redisTemplate.delete(getJobKey(job.getToken()));
+            throw new ExportJobException(MessageConstant.EXPORT_BUSY);
+        }
+        return toVO(job);
+    }
+
+    /**
+     * 查询导出任务
+     * @param token
+     * @return
+     */
+    @Override
+    public ExportJobVO getJob(String token) {
+        return toVO(getExistingJob(token));
+    }
+
+    /**
+     * 下载导出任务生成的文件
+     * @param token
+     * @param response
+     * @throws IOException
+     */
+    @Override
+    public void download(String token, HttpServletResponse response) throws IOException {
+        ExportJob job = getExistingJob(token);
+        if (!ExportJob.DONE.equals(job.getStatus())) {
+            throw new ExportJobException(MessageConstant.EXPORT_JOB_NOT_READY);
+        }
+        //各节点挂载共享目录的位置可能不同，按文件名在当前节点的导出目录中查找
+        Path path = getExportDir().resolve(job.getFilePath());
+        if (!Files.exists(path)) {
+            throw new ExportJobException(MessageConstant.EXPORT_JOB_NOT_FOUND);
+        }
+        writeFile(response, path, job.getFileName());
+    }
+
+    /**
+     * 直接导出csv格式的订单明细，边查询边输出，不设置Content-Length，以分块传输的方式发送
+     * 数据持续输出，导出大量订单时连接不会因为等待生成文件而超时；与后台导出任务共用并发数上限
+     * @param begin
+     * @param end
+     * @param response
+     * @throws IOException
+     */
+    @Override
+    public void exportOrders(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException {
+        checkRange(begin, end);
+        //在请求线程中导出，许可已用完时立即拒绝，不排队等待
+        if (!exportPermits.tryAcquire()) {
+            throw new ExportJobException(MessageConstant.EXPORT_BUSY);
+        }
+        try {
+            streamOrders(begin, end, response);
+        } finally {
+            exportPermits.release();
+        }
+    }
+
+    private void streamOrders(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException {
+        String encodedName = URLEncoder.encode("订单明细" + begin + "至" + end + ".csv", "UTF-8").replace("+", "%20");
+        response.setContentType(CSV_CONTENT_TYPE);
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + encodedName + "\"; filename*=UTF-8''" + encodedName);
+
+        ServletOutputStream out = response.getOutputStream();
+        writeOrders(begin, end, ExportJob.FORMAT_CSV, out);
+        out.flush();
+    }
+
+    /**
+     * 导出近30天的运营数据报表
+     * 每晚预先生成的文件存在时直接输出文件，否则实时生成
+     * @param response
+     * @throws IOException
+     */
+    @Override
+    public void exportDefault(HttpServletResponse response) throws IOException {
+        LocalDate begin = LocalDate.now().minusDays(30);
+        LocalDate end = LocalDate.now().minusDays(1);
+        Path path = getDefaultPath(begin, end);
+        if (Files.exists(path)) {
+            writeFile(response, path, "运营数据报表" + begin + "至" + end + ".xlsx");
+            return;
+        }
+        reportService.exportBusinessData(response);
+    }
+
+    /**
+     * 预先生成近30天的运营数据报表
+     * 在每晚修正汇总数据之后执行，生成的文件当天内不再更新
+     * 各节点都会触发，通过redis锁保证只有一个节点生成；临时文件名各不相同，不会写入同一个文件
+     */
+    @Override
+    public void prebuildDefault() {
+        LocalDate begin = LocalDate.now().minusDays(30);
+        LocalDate end = LocalDate.now().minusDays(1);
+        String lockKey = PREBUILD_LOCK_KEY + end;
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, UUID.randomUUID().toString(), 1, TimeUnit.DAYS);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.info("运营数据报表已由其他节点生成：{}", end);
+            return;
+        }
+
+        Path tmp = null;
+        try {
+            Path path = getDefaultPath(begin, end);
+            tmp = path.resolveSibling(UUID.randomUUID() + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                reportService.writeBusinessDataExcel(begin, end, out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("预先生成运营数据报表：{}", path);
+        } catch (Exception e) {
+            log.error("预先生成运营数据报表失败", e);
+//            生成失败时释放锁，允许再次生成
+            redisTemplate.delete(lockKey);
+            if (tmp != null) {
+                tmp.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * 清理过期的导出文件，任务信息在redis中到期后自动删除
+     */
+    @Override
+    public void cleanExpired() {
+        long retention = reportProperties.getExportRetention();
+        File[] files = new File(reportProperties.getExportDir()).listFiles();
+        if (files == null) {
+            return;
+        }
+        long expireMillis = System.currentTimeMillis() - retention;
+        for (File file : files) {
+            if (file.isFile() && file.lastModified() < expireMillis && !file.delete()) {
+                log.warn("删除过期导出文件失败：{}", file);
+            }
+        }
+    }
+
+    /**
+     * 在导出线程池中执行导出任务，先写入临时文件，完成后再改名，下载时不会读到未写完的文件
+     * @param job
+     */
+    private void run(ExportJob job) {
+        job.setStatus(ExportJob.RUNNING);
+        saveJob(job);
+        Path tmp = null;
+        try {
+            Path dir = getExportDir();
+            tmp = dir.resolve(job.getToken() + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                if (ExportJob.TYPE_BUSINESS.equals(job.getType())) {
+                    reportService.writeBusinessDataExcel(job.getBegin(), job.getEnd(), out);
+                } else {
+                    //导出线程中等待直接导出释放许可
+                    exportPermits.acquire();
+                    try {
+                        writeOrders(job.getBegin(), job.getEnd(), job.getFormat(), out);
+                    } finally {
+                        exportPermits.release();
+                    }
+                }
+            }
+            Path path = dir.resolve(job.getToken() + "." + job.getFormat());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.setFilePath(path.getFileName().toString());
+            job.setStatus(ExportJob.DONE);
+            log.info("导出任务完成：{}，{}", job.getToken(), job.getFileName());
+        } catch (Exception e) {
+            log.error("导出任务失败：{}", job.getToken(), e);
+            job.setError(e.getMessage());
+            job.setStatus(ExportJob.FAILED);
+            if (tmp != null) {
+                tmp.toFile().delete();
+            }
+        } finally {
+            job.setFinishTime(LocalDateTime.now());
+            saveJob(job);
+        }
+    }
+
+    /**
+     * 保存任务信息，每次保存的都是任务当前状态的完整快照，到期时间与导出文件的保留时间一致
+     * @param job
+     */
+    private void saveJob(ExportJob job) {
+        redisTemplate.opsForValue().set(getJobKey(job.getToken()), job,
+                reportProperties.getExportRetention(), TimeUnit.MILLISECONDS);
+    }
+
+    private String getJobKey(String token) {
+        return reportProperties.getExportJobKeyPrefix() + token;
+    }
+
+    /**
+     * 导出订单明细，通过游标逐行读取订单并直接写出，内存占用与订单数量无关
+     * 游标只在事务内有效，整个导出在一个只读事务中完成
+     * @param begin
+     * @param end
+     * @param format
+     * @param out
+     * @throws IOException
+     */
+    private void writeOrders(LocalDate begin, LocalDate end, String format, OutputStream out) throws IOException {
+        try {
+            readOnlyTransactionTemplate.execute(status -> {
+                try (Cursor<OrderExportDTO> cursor = orderMapper.streamForExport(
+                        begin.atStartOfDay(), end.plusDays(1).atStartOfDay())) {
+                    if (ExportJob.FORMAT_CSV.equals(format)) {
+                        writeOrdersCsv(cursor, out);
+                    } else {
+                        writeOrdersExcel(cursor, out);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 写出csv格式的订单明细，写满缓冲区即输出，直接输出到客户端时以分块传输的方式持续发送
+     * 开头写入BOM，Excel打开时能正确识别UTF-8编码
+     */
+    private void writeOrdersCsv(Cursor<OrderExportDTO> cursor, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write('\uFEFF');
+        writeCsvLine(writer, ORDER_TITLES);
+        String[] values = new String[ORDER_TITLES.length];
+        for (OrderExportDTO order : cursor) {
+            toOrderValues(order, values);
+            writeCsvLine(writer, values);
+        }
+        writer.flush();
+    }
+
+    private void writeCsvLine(Writer writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapeCsv(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * csv字段转义：包含逗号、引号、换行时加引号；以=、+、-、@开头的文本加前缀，避免在Excel中被当作公式执行
+     * @param value
+     * @return
+     */
+    private String escapeCsv(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        char first = value.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@') {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * 写出xlsx格式的订单明细，内存中只保留最近的少量行，超过单个工作表的行数上限时写入下一个工作表
+     */
+    private void writeOrdersExcel(Cursor<OrderExportDTO> cursor, OutputStream out) throws IOException {
+        SXSSFWorkbook excel = new SXSSFWorkbook(100);
+        try {
+            Sheet sheet = null;
+            int rowIndex = EXCEL_MAX_ROWS;
+            String[] values = new String[ORDER_TITLES.length];
+            for (OrderExportDTO order : cursor) {
+                if (rowIndex == EXCEL_MAX_ROWS) {
+                    sheet = createOrderSheet(excel);
+                    rowIndex = 1;
+                }
+                toOrderValues(order, values);
+                Row row = sheet.createRow(rowIndex++);
+                for (int i = 0; i < values.length; i++) {
+                    if (i == ORDER_AMOUNT_COLUMN || i == DISH_AMOUNT_COLUMN) {
+                        row.createCell(i).setCellValue(values[i].isEmpty() ? 0.0 : Double.parseDouble(values[i]));
+                    } else if (i == DISH_NUMBER_COLUMN) {
+                        row.createCell(i).setCellValue(values[i].isEmpty() ? 0 : Integer.parseInt(values[i]));
+                    } else {
+                        row.createCell(i).setCellValue(values[i]);
+                    }
+                }
+            }
+            if (sheet == null) {
+                createOrderSheet(excel);
+            }
+            excel.write(out);
+        } finally {
+            //删除生成过程中产生的临时文件
+            excel.dispose();
+            excel.close();
+        }
+    }
+
+    private Sheet createOrderSheet(SXSSFWorkbook excel) {
+        int sheetCount = excel.getNumberOfSheets();
+        Sheet sheet = excel.createSheet(sheetCount == 0 ? "订单明细" : "订单明细" + (sheetCount + 1));
+        Row row = sheet.createRow(0);
+        for (int i = 0; i < ORDER_TITLES.length; i++) {
+            row.createCell(i).setCellValue(ORDER_TITLES[i]);
+        }
+        return sheet;
+    }
+
+    /**
+     * 订单明细行转为各列的文本，复用同一个数组
+     * @param order
+     * @param values
+     */
+    private void toOrderValues(OrderExportDTO order, String[] values) {
+        values[0] = order.getNumber();
+        values[1] = getStatusName(order.getStatus());
+        values[2] = order.getOrderTime() == null ? "" : order.getOrderTime().format(TIME_FORMATTER);
+        values[3] = order.getCheckoutTime() == null ? "" : order.getCheckoutTime().format(TIME_FORMATTER);
+        values[4] = order.getPayMethod() == null ? "" : order.getPayMethod() == 1 ? "微信" : order.getPayMethod() == 2 ? "支付宝" : "";
+        values[5] = order.getConsignee();
+        values[6] = order.getPhone();
+        values[7] = order.getAddress();
+        values[ORDER_AMOUNT_COLUMN] = order.getAmount() == null ? "" : order.getAmount().toPlainString();
+        values[9] = order.getRemark();
+        values[10] = order.getDishName();
+        values[11] = order.getDishFlavor();
+        values[DISH_NUMBER_COLUMN] = order.getDishNumber() == null ? "" : String.valueOf(order.getDishNumber());
+        values[DISH_AMOUNT_COLUMN] = order.getDishAmount() == null ? "" : order.getDishAmount().toPlainString();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                values[i] = "";
+            }
+        }
+    }
+
+    private String getStatusName(Integer status) {
+        return status == null || status < 1 || status >= ORDER_STATUS.length ? "" : ORDER_STATUS[status];
+    }
+
+    private void checkRange(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)
+                || ChronoUnit.DAYS.between(begin, end) >= reportProperties.getExportMaxDays()) {
+            throw new ExportJobException(MessageConstant.EXPORT_RANGE_INVALID);
+        }
+    }
+
+    /**
+     * 查询当前用户提交的导出任务，其他用户的任务视为不存在
+     * @param token
+     * @return
+     */
+    private ExportJob getExistingJob(String token) {
+        ExportJob job = token == null ? null : (ExportJob) redisTemplate.opsForValue().get(getJobKey(token));
+        if (job == null || !Objects.equals(job.getCreateUser(), BaseContext.getCurrentId())) {
+            throw new ExportJobException(MessageConstant.EXPORT_JOB_NOT_FOUND);
+        }
+        return job;
+    }
+
+    private Path getExportDir() throws IOException {
+        return Files.createDirectories(Paths.get(reportProperties.getExportDir()));
+    }
+
+    private Path getDefaultPath(LocalDate begin, LocalDate end) throws IOException {
+        return getExportDir().resolve("business-" + begin + "-" + end + ".xlsx");
+    }
+
+    /**
+     * 将本地文件输出到客户端浏览器
+     * @param response
+     * @param path
+     * @param fileName
+     * @throws IOException
+     */
+    private void writeFile(HttpServletResponse response, Path path, String fileName) throws IOException {
+        //设置响应头，文件名中的中文需要编码
+        String encodedName = URLEncoder.encode(fileName, "UTF-8").replace("+", "%20");
+        response.setContentType(fileName.endsWith("." + ExportJob.FORMAT_CSV) ? CSV_CONTENT_TYPE : EXCEL_CONTENT_TYPE);
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + encodedName + "\"; filename*=UTF-8''" + encodedName);
+        response.setContentLengthLong(Files.size(path));
+
+        ServletOutputStream out = response.getOutputStream();
+        Files.copy(path, out);
+        out.flush();
+    }
+
+    private ExportJobVO toVO(ExportJob job) {
+        ExportJobVO exportJobVO = new ExportJobVO();
+        BeanUtils.copyProperties(job, exportJobVO);
+        return exportJobVO;
+    }
+}
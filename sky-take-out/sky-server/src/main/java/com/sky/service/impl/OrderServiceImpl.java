@@ -6,16 +6,23 @@ import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.sky.constant.MessageConstant;
+import com.sky.constant.WebSocketConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
 import com.sky.entity.*;
+import com.sky.event.OrderStatusChangedEvent;
 import com.sky.exception.AddressBookBusinessException;
+import com.sky.exception.DependencyUnavailableException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
 import com.sky.result.PageResult;
 import com.sky.service.OrderService;
-import com.sky.utils.HttpClientUtil;
+import com.sky.service.RefundService;
+import com.sky.service.UserService;
+import com.sky.properties.ResilienceProperties;
+import com.sky.utils.AsyncHttpClientUtil;
+import com.sky.utils.DependencyGuard;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
@@ -25,9 +32,12 @@ import com.sky.websocket.WebSocketServer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
 import java.math.BigDecimal;
@@ -35,12 +45,24 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class OrderServiceImpl implements OrderService {
+    //百度地图地理编码、驾车路线规划接口地址
+    public static final String GEOCODING_URL = "https://api.map.baidu.com/geocoding/v3";
+    public static final String DRIVING_URL = "https://api.map.baidu.com/directionlite/v1/driving";
+    //地球半径（米）
+    private static final double EARTH_RADIUS = 6371000;
+    //城市道路绕行系数，驾车距离约为直线距离的1.4倍
+    private static final double ROUTE_FACTOR = 1.4;
 
     @Autowired
     private OrderMapper orderMapper;
@@ -55,7 +77,7 @@ public class OrderServiceImpl implements OrderService {
     private AddressBookMapper addressBookMapper;
 
     @Autowired
-    private UserMapper userMapper;
+    private UserService userService;
 
     @Autowired
     private WeChatPayUtil weChatPayUtil;
@@ -69,24 +91,60 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private WebSocketServer webSocketServer;
 
+    @Autowired
+    private RefundService refundService;
+
+    @Autowired
+    @Qualifier("bizExecutor")
+    private Executor bizExecutor;
+
+    @Autowired
+    private ResilienceProperties resilienceProperties;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    //店铺经纬度坐标缓存
+    private volatile String shopLngLat;
+
+    //收货地址最近一次校验得到的配送距离，地图服务不可用时降级使用
+    private final Map<String, Integer> distanceCache = Collections.synchronizedMap(new LinkedHashMap<String, Integer>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > 10000;
+        }
+    });
+
     /**
      * 用户下单
+     * 配送范围校验通过异步http完成，等待地图接口响应期间不占用请求线程，之后在业务线程池中保存订单
      * @param ordersSubmitDTO
      * @return
      */
     @Override
-    public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
+    public CompletableFuture<OrderSubmitVO> submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
 //        异常情况的处理（收货地址为空、超出配送氛围、购物车为空）
         AddressBook addressBook = addressBookMapper.getById(ordersSubmitDTO.getAddressBookId());
         if (addressBook == null) {
             throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
         }
 
-//        检查用户的收货地址是否超出配送范围
-        checkOutOfRange(addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail());
-
+//        后续步骤在其他线程中执行，读取不到BaseContext，需要在请求线程中先取出当前用户id
         Long currentId = BaseContext.getCurrentId();
 
+//        检查用户的收货地址是否超出配送范围
+        return checkOutOfRange(addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail())
+                .thenApplyAsync(v -> saveOrder(ordersSubmitDTO, addressBook, currentId), bizExecutor);
+    }
+
+    /**
+     * 保存订单及订单明细，并清空购物车
+     * @param ordersSubmitDTO
+     * @param addressBook
+     * @param currentId
+     * @return
+     */
+    private OrderSubmitVO saveOrder(OrdersSubmitDTO ordersSubmitDTO, AddressBook addressBook, Long currentId) {
         ShoppingCart shoppingCart = new ShoppingCart();
 //        只能查询当前用户数据
         shoppingCart.setUserId(currentId);
@@ -121,6 +179,8 @@ public class OrderServiceImpl implements OrderService {
 
 //        向明细表中查询n条数据
         orderDetailMapper.insertBatch(orderDetailList);
+//        明细写入后再发布下单事件，监听器（如订单分析）读取订单时能读到完整的明细
+        applicationEventPublisher.publishEvent(OrderStatusChangedEvent.created(order));
 
 //        清理购物车中的数据
         shoppingCartMapper.deleteByUserId(currentId);
@@ -146,7 +206,11 @@ public class OrderServiceImpl implements OrderService {
     public OrderPaymentVO payment(OrdersPaymentDTO ordersPaymentDTO) throws Exception {
 //        当前登录用户id
         Long userId = BaseContext.getCurrentId();
-        User user = userMapper.getById(String.valueOf(userId));
+//        openid来自令牌，升级前签发的令牌中没有openid时从用户身份缓存中获取
+        String openid = BaseContext.getCurrentOpenid();
+        if (openid == null) {
+            openid = userService.getOpenid(userId);
+        }
 
         String orderNumber = ordersPaymentDTO.getOrderNumber();
         Orders orders = orderMapper.getByNumberAndUserId(orderNumber, userId);
@@ -156,7 +220,7 @@ public class OrderServiceImpl implements OrderService {
                 ordersPaymentDTO.getOrderNumber(),
                 orders.getAmount(),
                 "苍穹外卖订单" + orders.getId(),
-                user.getOpenid()
+                openid
         );
 
         if (jsonObject.getString("code") != null && jsonObject.getString("code").equals("ORDERPAID")) {
@@ -175,28 +239,24 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public void paySuccess(String outTradeNo) {
-//        当前登录用户id
-        Long userId = BaseContext.getCurrentId();
-
-//        根据订单号查询当前用户的订单
-        Orders orderDB = orderMapper.getByNumberAndUserId(outTradeNo, userId);
+//        支付回调线程中没有登录用户，直接根据订单号修改订单的状态、支付状态、结账时间
+//        只有待付款的订单会被修改，重复的回调不会重复处理
+        Orders orderDB = orderMapper.getByNumber(outTradeNo);
+        int updated = orderMapper.updatePaySuccess(outTradeNo, LocalDateTime.now());
+        if (orderDB == null || updated == 0) {
+            log.info("订单无需处理支付成功：{}", outTradeNo);
+            return;
+        }
 
-//        根据订单id更新订单的状态、支付方式、支付状态、结账时间
-        Orders orders = Orders.builder()
-                .id(orderDB.getId())
-                .status(Orders.TO_BE_CONFIRMED)
-                .payStatus(Orders.PAID)
-                .checkoutTime(LocalDateTime.now())
-                .build();
-        orderMapper.update(orders);
+        applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(orderDB, Orders.TO_BE_CONFIRMED));
 
         HashMap map = new HashMap();
-        map.put("type", 1);
-        map.put("orderId", orders.getId());
+        map.put("type", WebSocketConstant.TYPE_NEW_ORDER);
+        map.put("orderId", orderDB.getId());
         map.put("content", "订单号：" + outTradeNo);
 
-//        通过WebSocket实现来电提醒，向客户端浏览器推送消息
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+//        通过WebSocket实现来电提醒，只推送给商家管理端
+        webSocketServer.sendToTopic(WebSocketConstant.TOPIC_ADMIN, map);
 
     }
 
@@ -266,6 +326,7 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     @Override
+    @Transactional
     public void userCancelById(Long id) throws Exception {
 //        根据id查询订单
         Orders orderDB = orderMapper.getById(id);
@@ -283,25 +344,19 @@ public class OrderServiceImpl implements OrderService {
         Orders orders = new Orders();
         orders.setId(orderDB.getId());
 
-//        订单处于待接单的状态下取消，需要进行退款
-        if (orderDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-//            调用微信支付退款接口
-            weChatPayUtil.refund(
-                    orderDB.getNumber(),
-                    orderDB.getNumber(),
-                    orders.getAmount(),
-                    orders.getAmount()
-            );
-
-//            支付状态修改为 退款
-            orders.setPayStatus(Orders.REFUND);
-        }
-
-//        更新订单状态，取消原因、时间
+//        更新订单状态，取消原因、时间，订单状态已被其他请求或超时任务修改时不再处理
         orders.setStatus(Orders.CANCELLED);
         orders.setCancelReason("用户取消");
         orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        if (orderMapper.updateIfStatus(orders, orderDB.getStatus(), null) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+
+//        订单处于待接单的状态下取消，需要进行退款，退款任务异步处理，支付状态由退款任务更新
+        if (orderDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
+            refundService.submit(orderDB);
+        }
+        applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(orderDB, Orders.CANCELLED));
     }
 
     /**
@@ -374,11 +429,22 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public void confirm(OrdersCancelDTO ordersCancelDTO) {
+        Orders orderDB = orderMapper.getById(ordersCancelDTO.getId());
+
+//        订单只有存在且状态为2（待接单）才可以接单
+        if (orderDB == null || !orderDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+
         Orders orders = Orders.builder()
                 .id(ordersCancelDTO.getId())
                 .status(Orders.CONFIRMED)
                 .build();
-        orderMapper.update(orders);
+//        重复点击或订单已被取消时不会修改订单，也不会重复统计
+        if (orderMapper.updateIfStatus(orders, Orders.TO_BE_CONFIRMED, null) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(orderDB, Orders.CONFIRMED));
     }
 
     /**
@@ -386,6 +452,7 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersRejectionDTO
      */
     @Override
+    @Transactional
     public void rejection(OrdersRejectionDTO ordersRejectionDTO) throws Exception {
 //        根据id查询订单
         Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
@@ -395,19 +462,6 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
 
-//        支付状态
-        Integer payStatus = ordersDB.getPayStatus();
-        if (payStatus == Orders.PAID) {
-//            用户已支付，需要退款
-            String refund = weChatPayUtil.refund(
-                    ordersDB.getNumber(),
-                    ordersDB.getNumber(),
-                    ordersDB.getAmount(),
-                    ordersDB.getAmount()
-            );
-            log.info("申请退款：{}", refund);
-        }
-
 //        拒单需要退款，根据订单id更新订单状态，拒单原因，取消时间
         Orders orders = new Orders();
         orders.setId(ordersDB.getId());
@@ -415,7 +469,17 @@ public class OrderServiceImpl implements OrderService {
         orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
         orders.setCancelTime(LocalDateTime.now());
 
-        orderMapper.update(orders);
+        if (orderMapper.updateIfStatus(orders, Orders.TO_BE_CONFIRMED, null) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+
+//        支付状态
+        Integer payStatus = ordersDB.getPayStatus();
+        if (Orders.PAID.equals(payStatus)) {
+//            用户已支付，需要退款
+            refundService.submit(ordersDB);
+        }
+        applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(ordersDB, Orders.CANCELLED));
     }
 
     /**
@@ -423,21 +487,14 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersCancelDTO
      */
     @Override
+    @Transactional
     public void cancel(OrdersCancelDTO ordersCancelDTO) throws Exception {
 //        根据id查询订单
         Orders orderDB = orderMapper.getById(ordersCancelDTO.getId());
 
-//        支付状态
-        Integer payStatus = orderDB.getPayStatus();
-        if (payStatus == 1) {
-//            用于已支付，需要退款
-//            String refund = weChatPayUtil.refund(
-//                    orderDB.getNumber(),
-//                    orderDB.getNumber(),
-//                    orderDB.getAmount(),
-//                    orderDB.getAmount()
-//            );
-//            log.info("申请退款：{}", refund);
+//        已取消的订单不能重复取消
+        if (orderDB == null || orderDB.getStatus().equals(Orders.CANCELLED)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
 
 //      管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
@@ -446,7 +503,18 @@ public class OrderServiceImpl implements OrderService {
         orders.setStatus(Orders.CANCELLED);
         orders.setCancelReason(ordersCancelDTO.getCancelReason());
         orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+//        订单状态已被其他请求或超时任务修改时不再处理
+        if (orderMapper.updateIfStatus(orders, orderDB.getStatus(), null) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+
+//        支付状态
+        Integer payStatus = orderDB.getPayStatus();
+        if (Orders.PAID.equals(payStatus)) {
+//            用于已支付，需要退款
+            refundService.submit(orderDB);
+        }
+        applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(orderDB, Orders.CANCELLED));
     }
 
     /**
@@ -469,7 +537,10 @@ public class OrderServiceImpl implements OrderService {
 //        更新订单状态，状态转为派送中
         orders.setStatus(Orders.DELIVERY_IN_PROGRESS);
 
-        orderMapper.update(orders);
+        if (orderMapper.updateIfStatus(orders, Orders.CONFIRMED, null) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(orderDB, Orders.DELIVERY_IN_PROGRESS));
     }
 
     /**
@@ -493,7 +564,10 @@ public class OrderServiceImpl implements OrderService {
         orders.setStatus(Orders.COMPLETED);
         orders.setDeliveryTime(LocalDateTime.now());
 
-        orderMapper.update(orders);
+        if (orderMapper.updateIfStatus(orders, Orders.DELIVERY_IN_PROGRESS, null) == 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(orderDB, Orders.COMPLETED));
     }
 
     /**
@@ -510,10 +584,11 @@ public class OrderServiceImpl implements OrderService {
 
 //        基于WebSocket实现催单
         HashMap map = new HashMap();
-        map.put("type", 2);
+        map.put("type", WebSocketConstant.TYPE_REMINDER);
         map.put("orderId", id);
         map.put("content", "订单号：" + orders.getNumber());
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+//        同一订单在合并窗口内的重复催单只推送一次
+        webSocketServer.sendToTopic(WebSocketConstant.TOPIC_ADMIN, map, "reminder:" + id);
     }
 
     /**
@@ -557,74 +632,140 @@ public class OrderServiceImpl implements OrderService {
 
     /**
      * 检查客户的收货地址是否超出配送范围
+     * 店铺坐标和收货地址坐标并行解析，店铺坐标解析一次后缓存
+     * 地图服务不可用时的降级：路线规划失败按直线距离估算；地址解析失败（超时、熔断、http错误、接口返回错误状态）或超出时间预算时使用该地址上次的校验结果
      * @param address
+     * @return
      */
-    private void checkOutOfRange(String address) {
-        HashMap map = new HashMap();
-        map.put("address", shopAddress);
-        map.put("output", "json");
-        map.put("ak", ak);
-
-//        获取店铺的经纬度坐标
-        String shopCoordinate = HttpClientUtil.doGet("https://api.map.baidu.com/geocoding/v3", map);
-
-        JSONObject jsonObject = JSON.parseObject(shopCoordinate);
-        if (!jsonObject.getString("status").equals("0")) {
-            throw new OrderBusinessException("店铺地址解析失败");
-        }
-
-//        数据解析
-        JSONObject location = jsonObject.getJSONObject("result").getJSONObject("location");
-        String lat = location.getString("lat");
-        String lng = location.getString("lng");
-
-//        店铺经纬度坐标
-        String shopLngLat = lat + "," + lng;
-
-        map.put("address", address);
-
-//        获取用户地址的经纬度坐标
-        String userCoordinate = HttpClientUtil.doGet("https://api.map.baidu.com/geocoding/v3", map);
-
-//        数据解析
-        jsonObject = JSON.parseObject(userCoordinate);
-        location = jsonObject.getJSONObject("result").getJSONObject("location");
-        lat = location.getString("lat");
-        lng = location.getString("lng");
-
-//        用户收货地址经纬度坐标
-        String userLngLat = lat + "," + lng;
+    private CompletableFuture<Void> checkOutOfRange(String address) {
+        CompletableFuture<Integer> distanceFuture = getShopLngLat()
+                .thenCombine(geocoding(address, "收货地址解析失败"), (shopLngLat, userLngLat) -> new String[]{shopLngLat, userLngLat})
+                .thenCompose(lngLat -> drivingDistance(lngLat[0], lngLat[1])
+                        .exceptionally(ex -> {
+                            log.warn("配送线路规划失败，按直线距离估算：{}", ex.getMessage());
+                            return estimateDistance(lngLat[0], lngLat[1]);
+                        }));
+
+        return DependencyGuard.withBudget(distanceFuture, resilienceProperties.getMapTimeBudget())
+                .handle((distance, ex) -> {
+                    if (ex == null) {
+                        distanceCache.put(address, distance);
+                        return distance;
+                    }
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    Integer cached = distanceCache.get(address);
+                    if (cached == null) {
+                        log.warn("配送范围校验失败且无缓存结果：{}", cause.getMessage());
+                        throw new OrderBusinessException(MessageConstant.DELIVERY_CHECK_UNAVAILABLE);
+                    }
+                    log.warn("配送范围校验失败，使用缓存的配送距离：{}", cached);
+                    return cached;
+                })
+                .thenAccept(distance -> {
+                    if(distance > 5000){
+                        //配送距离超过5000米
+                        throw new OrderBusinessException("超出配送范围");
+                    }
+                });
+    }
 
+    /**
+     * 调用地图接口规划驾车路线，获取配送距离
+     * @param shopLngLat
+     * @param userLngLat
+     * @return 距离（米）
+     */
+    private CompletableFuture<Integer> drivingDistance(String shopLngLat, String userLngLat) {
+        Map<String, String> map = new HashMap<>();
+        map.put("ak", ak);
         map.put("origin", shopLngLat);
         map.put("destination", userLngLat);
         map.put("steps_info", "0");
 
         //路线规划
-        String json = HttpClientUtil.doGet("https://api.map.baidu.com/directionlite/v1/driving", map);
-
-        jsonObject = JSON.parseObject(json);
-        if (!jsonObject.getString("status").equals("0")) {
-            throw new OrderBusinessException("配送线路规划失败");
-        }
+        return AsyncHttpClientUtil.doGet(DRIVING_URL, map).thenApply(json -> {
+            JSONObject jsonObject = JSON.parseObject(json);
+            if (jsonObject == null || !"0".equals(jsonObject.getString("status"))) {
+                throw new DependencyUnavailableException("配送线路规划失败");
+            }
+
+//            数据解析
+            JSONObject result = jsonObject.getJSONObject("result");
+            JSONArray jsonArray = (JSONArray) result.get("routes");
+            return (Integer) ((JSONObject) jsonArray.get(0)).get("distance");
+        });
+    }
 
-//        数据解析
-        JSONObject result = jsonObject.getJSONObject("result");
-        JSONArray jsonArray = (JSONArray) result.get("routes");
-        Integer distance = (Integer) ((JSONObject) jsonArray.get(0)).get("distance");
+    /**
+     * 本地估算配送距离：两点球面直线距离乘以道路绕行系数
+     * @param shopLngLat 格式为 纬度,经度
+     * @param userLngLat 格式为 纬度,经度
+     * @return 距离（米）
+     */
+    private static int estimateDistance(String shopLngLat, String userLngLat) {
+        String[] from = shopLngLat.split(",");
+        String[] to = userLngLat.split(",");
+        double lat1 = Math.toRadians(Double.parseDouble(from[0]));
+        double lat2 = Math.toRadians(Double.parseDouble(to[0]));
+        double dLat = lat2 - lat1;
+        double dLng = Math.toRadians(Double.parseDouble(to[1]) - Double.parseDouble(from[1]));
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        double straight = 2 * EARTH_RADIUS * Math.asin(Math.sqrt(h));
+        return (int) (straight * ROUTE_FACTOR);
+    }
 
-        if(distance > 5000){
-            //配送距离超过5000米
-            throw new OrderBusinessException("超出配送范围");
+    /**
+     * 获取店铺的经纬度坐标，店铺地址不变，解析成功后缓存
+     * @return
+     */
+    private CompletableFuture<String> getShopLngLat() {
+        String cached = shopLngLat;
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
         }
+        return geocoding(shopAddress, "店铺地址解析失败").thenApply(lngLat -> {
+            shopLngLat = lngLat;
+            return lngLat;
+        });
+    }
+
+    /**
+     * 调用地图接口解析地址的经纬度坐标
+     * @param address
+     * @param errorMessage 解析失败时的提示信息
+     * @return 格式为 纬度,经度
+     */
+    private CompletableFuture<String> geocoding(String address, String errorMessage) {
+        Map<String, String> map = new HashMap<>();
+        map.put("address", address);
+        map.put("output", "json");
+        map.put("ak", ak);
+        return AsyncHttpClientUtil.doGet(GEOCODING_URL, map).thenApply(json -> {
+            //http状态码不是200时响应内容为空，与接口返回的错误状态一样视为地图服务不可用，由调用方降级
+            JSONObject jsonObject = JSON.parseObject(json);
+            if (jsonObject == null || !"0".equals(jsonObject.getString("status"))) {
+                throw new DependencyUnavailableException(errorMessage);
+            }
+
+//            数据解析
+            JSONObject location = jsonObject.getJSONObject("result").getJSONObject("location");
+            return location.getString("lat") + "," + location.getString("lng");
+        });
     }
 
     @Override
     public void updateStatus(OrdersPaymentDTO ordersPaymentDTO) {
         Long userId = BaseContext.getCurrentId();
         Orders orders = orderMapper.getByNumberAndUserId(ordersPaymentDTO.getOrderNumber(),userId);
+        OrderStatusChangedEvent event = OrderStatusChangedEvent.of(orders, Orders.TO_BE_CONFIRMED);
         orders.setStatus(Orders.TO_BE_CONFIRMED);
         orders.setPayStatus(Orders.PAID);
-        orderMapper.update(orders);
+//        只修改待付款的订单，重复提交不会重复统计
+        if (orderMapper.updateIfStatus(orders, Orders.PENDING_PAYMENT, Orders.UN_PAID) == 0) {
+            return;
+        }
+        applicationEventPublisher.publishEvent(event);
     }
 
 }
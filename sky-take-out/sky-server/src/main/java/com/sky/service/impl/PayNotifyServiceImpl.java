@@ -0,0 +1,197 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Orders;
+import com.sky.entity.RefundJob;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.RefundJobMapper;
+import com.sky.service.OrderService;
+import com.sky.service.PayNotifyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@Slf4j
+public class PayNotifyServiceImpl implements PayNotifyService {
+
+    //支付通知去重key前缀，规则：pay_notify_微信支付交易号
+    private static final String PAY_NOTIFY_KEY = "pay_notify_";
+
+    //退款通知去重key前缀，规则：refund_notify_微信支付退款单号
+    private static final String REFUND_NOTIFY_KEY = "refund_notify_";
+
+    //退款状态
+    private static final String REFUND_SUCCESS = "SUCCESS";
+    private static final String REFUND_CLOSED = "CLOSED";
+    private static final String REFUND_ABNORMAL = "ABNORMAL";
+
+    //每批写入的最大退款结果数
+    private static final int REFUND_BATCH_SIZE = 500;
+
+    @Autowired
+    private RefundJobMapper refundJobMapper;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    //待写入数据库的退款结果
+    private final Queue<RefundResult> refundResultQueue = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    @Qualifier("notifyExecutor")
+    private ThreadPoolTaskExecutor notifyExecutor;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 接收支付成功通知
+     * @param outTradeNo
+     * @param transactionId
+     */
+    @Override
+    public void acceptPaySuccess(String outTradeNo, String transactionId) {
+//        微信会重复发送同一笔交易的通知，已接收过的直接忽略，不再访问数据库
+        String key = PAY_NOTIFY_KEY + transactionId;
+        Boolean first = redisTemplate.opsForValue().setIfAbsent(key, outTradeNo, 1, TimeUnit.DAYS);
+        if (!Boolean.TRUE.equals(first)) {
+            log.info("重复的支付成功通知：{}", transactionId);
+            return;
+        }
+
+        try {
+            notifyExecutor.execute(() -> {
+                try {
+//                    业务处理，修改订单状态、来单提醒
+                    orderService.paySuccess(outTradeNo);
+                } catch (Exception e) {
+                    log.error("处理支付成功通知失败：{}", outTradeNo, e);
+//                    处理失败时删除去重标记，后续的通知或对账可以重新处理
+                    redisTemplate.delete(key);
+                }
+            });
+        } catch (RuntimeException e) {
+//            线程池拒绝任务时同样删除去重标记，否则微信的重发通知会被当成重复通知丢弃
+            redisTemplate.delete(key);
+            throw e;
+        }
+    }
+
+    /**
+     * 接收退款结果通知
+     * @param outTradeNo
+     * @param outRefundNo
+     * @param refundId
+     * @param refundStatus
+     */
+    @Override
+    public void acceptRefundResult(String outTradeNo, String outRefundNo, String refundId, String refundStatus) {
+        String key = REFUND_NOTIFY_KEY + refundId;
+        Boolean first = redisTemplate.opsForValue().setIfAbsent(key, refundStatus, 1, TimeUnit.DAYS);
+        if (!Boolean.TRUE.equals(first)) {
+            log.info("重复的退款结果通知：{}", refundId);
+            return;
+        }
+        try {
+            submitRefundResult(outTradeNo, outRefundNo, refundStatus);
+        } catch (RuntimeException e) {
+//            放入队列失败时删除去重标记，让微信的重发通知可以重新处理
+            redisTemplate.delete(key);
+            throw e;
+        }
+    }
+
+    /**
+     * 放入待写入队列
+     * @param outTradeNo
+     * @param outRefundNo
+     * @param refundStatus
+     */
+    @Override
+    public void submitRefundResult(String outTradeNo, String outRefundNo, String refundStatus) {
+        refundResultQueue.offer(new RefundResult(outTradeNo, outRefundNo, refundStatus));
+    }
+
+    /**
+     * 将队列中的退款结果批量写入数据库
+     * 写入失败时把这一批结果放回队列，下次重新写入
+     */
+    @Override
+    public void flushRefundResults() {
+        List<RefundResult> batch = new ArrayList<>();
+        RefundResult result;
+        while (batch.size() < REFUND_BATCH_SIZE && (result = refundResultQueue.poll()) != null) {
+            batch.add(result);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeRefundResults(batch));
+        } catch (Exception e) {
+            log.error("写入退款结果失败，{}条结果放回队列", batch.size(), e);
+            refundResultQueue.addAll(batch);
+        }
+    }
+
+    private void writeRefundResults(List<RefundResult> batch) {
+        List<String> successRefundNos = new ArrayList<>();
+        List<String> successTradeNos = new ArrayList<>();
+        Map<String, List<String>> failedRefundNos = new HashMap<>();
+
+        for (RefundResult result : batch) {
+            if (REFUND_SUCCESS.equals(result.refundStatus)) {
+                successRefundNos.add(result.outRefundNo);
+                successTradeNos.add(result.outTradeNo);
+            } else if (REFUND_CLOSED.equals(result.refundStatus) || REFUND_ABNORMAL.equals(result.refundStatus)) {
+                failedRefundNos.computeIfAbsent(result.refundStatus, k -> new ArrayList<>()).add(result.outRefundNo);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (!successRefundNos.isEmpty()) {
+            refundJobMapper.updateResultBatch(successRefundNos, RefundJob.SUCCESS, null, now);
+//            支付状态修改为 退款
+            orderMapper.updatePayStatusByNumbers(successTradeNos, Orders.REFUND);
+        }
+        failedRefundNos.forEach((refundStatus, outRefundNos) -> {
+            log.error("退款失败：{}，{}", refundStatus, outRefundNos);
+            refundJobMapper.updateResultBatch(outRefundNos, RefundJob.FAILED, refundStatus, now);
+        });
+    }
+
+    /**
+     * 待写入的退款结果
+     */
+    private static class RefundResult {
+        private final String outTradeNo;
+        private final String outRefundNo;
+        private final String refundStatus;
+
+        private RefundResult(String outTradeNo, String outRefundNo, String refundStatus) {
+            this.outTradeNo = outTradeNo;
+            this.outRefundNo = outRefundNo;
+            this.refundStatus = refundStatus;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.sky.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.entity.Orders;
+import com.sky.entity.RefundJob;
+import com.sky.mapper.RefundJobMapper;
+import com.sky.properties.RefundProperties;
+import com.sky.service.RefundService;
+import com.sky.utils.WeChatPayUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+@Service
+@Slf4j
+public class RefundServiceImpl implements RefundService {
+
+    @Autowired
+    private RefundJobMapper refundJobMapper;
+
+    @Autowired
+    private WeChatPayUtil weChatPayUtil;
+
+    @Autowired
+    private RefundProperties refundProperties;
+
+    @Autowired
+    @Qualifier("refundExecutor")
+    private ThreadPoolTaskExecutor refundExecutor;
+
+    /**
+     * 提交退款申请
+     * @param orders
+     */
+    @Override
+    public void submit(Orders orders) {
+        LocalDateTime now = LocalDateTime.now();
+
+//        商户退款单号沿用订单号，同一订单重复提交只会生成一个退款任务
+        RefundJob refundJob = RefundJob.builder()
+                .orderId(orders.getId())
+                .outTradeNo(orders.getNumber())
+                .outRefundNo(orders.getNumber())
+                .refundAmount(orders.getAmount())
+                .totalAmount(orders.getAmount())
+                .status(RefundJob.PENDING)
+                .attempts(0)
+                .nextRetryTime(now)
+                .createTime(now)
+                .updateTime(now)
+                .build();
+
+        if (refundJobMapper.insertIgnore(refundJob) == 0) {
+            log.info("退款任务已存在：{}", orders.getNumber());
+        }
+    }
+
+    /**
+     * 拉取到期的退款任务并交给工作线程处理
+     */
+    @Override
+    public void processDueJobs() {
+        LocalDateTime now = LocalDateTime.now();
+
+//        工作线程异常退出时，处理中的任务会一直卡住，超时后重新入队
+        refundJobMapper.resetStuck(now.minus(refundProperties.getProcessingTimeout(), ChronoUnit.MILLIS));
+
+//        只拉取工作线程能够立即处理的数量，控制对微信支付的并发
+        int capacity = refundProperties.getBatchSize() - refundExecutor.getThreadPoolExecutor().getQueue().size();
+        if (capacity <= 0) {
+            return;
+        }
+
+        List<RefundJob> jobList = refundJobMapper.listDue(now, capacity);
+        for (RefundJob job : jobList) {
+            if (refundJobMapper.claim(job.getId(), now) == 0) {
+//                已被其他节点抢占
+                continue;
+            }
+            try {
+                refundExecutor.execute(() -> execute(job));
+            } catch (TaskRejectedException e) {
+                RefundJob rollback = RefundJob.builder()
+                        .id(job.getId())
+                        .status(RefundJob.PENDING)
+                        .build();
+                refundJobMapper.update(rollback);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 调用微信支付退款接口
+     * @param job
+     */
+    private void execute(RefundJob job) {
+        int attempts = job.getAttempts() + 1;
+        String error;
+        try {
+            String result = weChatPayUtil.refund(
+                    job.getOutTradeNo(),
+                    job.getOutRefundNo(),
+                    job.getRefundAmount(),
+                    job.getTotalAmount()
+            );
+            log.info("申请退款：{}", result);
+
+            JSONObject jsonObject = JSON.parseObject(result);
+            String refundId = jsonObject == null ? null : jsonObject.getString("refund_id");
+            if (refundId != null) {
+//                微信已受理，退款结果以退款通知为准，届时再修改订单支付状态
+                refundJobMapper.markSubmitted(job.getId(), refundId, attempts, LocalDateTime.now());
+                return;
+            }
+            error = result;
+        } catch (Exception e) {
+            log.error("申请退款失败：{}", job.getOutRefundNo(), e);
+            error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+
+        retryLater(job, attempts, error);
+    }
+
+    /**
+     * 按指数退避安排下次重试，超过最大尝试次数则标记为失败
+     * @param job
+     * @param attempts
+     * @param error
+     */
+    private void retryLater(RefundJob job, int attempts, String error) {
+        LocalDateTime now = LocalDateTime.now();
+        RefundJob retry = RefundJob.builder()
+                .id(job.getId())
+                .attempts(attempts)
+                .lastError(error != null && error.length() > 500 ? error.substring(0, 500) : error)
+                .updateTime(now)
+                .build();
+
+        if (attempts >= refundProperties.getMaxAttempts()) {
+            log.error("退款任务重试次数耗尽：{}", job.getOutRefundNo());
+            retry.setStatus(RefundJob.FAILED);
+        } else {
+            long backoff = refundProperties.getInitialBackoff() << Math.min(attempts - 1, 20);
+            backoff = Math.min(backoff, refundProperties.getMaxBackoff());
+            retry.setStatus(RefundJob.PENDING);
+            retry.setNextRetryTime(now.plus(backoff, ChronoUnit.MILLIS));
+        }
+        refundJobMapper.update(retry);
+    }
+}
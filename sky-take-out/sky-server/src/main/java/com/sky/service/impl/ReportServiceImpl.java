@@ -1,25 +1,41 @@
 package com.sky.service.impl;
 
+import com.sky.analytics.OrderColumnStore;
+import com.sky.constant.MessageConstant;
+import com.sky.dto.AnalyticsRowDTO;
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
-import com.sky.entity.Orders;
-import com.sky.mapper.OrderMapper;
+import com.sky.dto.TimeSeriesQueryDTO;
+import com.sky.entity.Category;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.AnalyticsMapper;
+import com.sky.mapper.CategoryMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.service.DailyStatisticsService;
 import com.sky.service.ReportService;
-import com.sky.service.WorkspaceService;
+import com.sky.service.TimeSeriesService;
 import com.sky.vo.*;
 import io.swagger.models.auth.In;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -32,15 +48,35 @@ import java.util.stream.Collectors;
 @Service
 @Slf4j
 public class ReportServiceImpl implements ReportService {
+    //运营数据报表模板
+    private static final String EXPORT_TEMPLATE = "template/运营数据报表模板.xlsx";
+    //报表模板中的明细行数
+    private static final int TEMPLATE_DAYS = 30;
+    private static final String EXCEL_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
 
     @Autowired
-    private OrderMapper orderMapper;
+    private UserMapper userMapper;
 
     @Autowired
-    private UserMapper userMapper;
+    private DailyStatisticsService dailyStatisticsService;
+
+    @Autowired
+    private TimeSeriesService timeSeriesService;
+
+    @Autowired
+    private OrderColumnStore orderColumnStore;
+
+    @Autowired
+    private AnalyticsMapper analyticsMapper;
+
+    @Autowired
+    private CategoryMapper categoryMapper;
 
     @Autowired
-    private WorkspaceService workspaceService;
+    private ReportProperties reportProperties;
+
+    //报表模板文件内容，只读取一次，每次导出基于它创建独立的工作簿
+    private volatile byte[] exportTemplate;
 
     /**
      * 根据时间区间统计营业额
@@ -51,33 +87,12 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public TurnoverReportVO getTurnover(LocalDate begin, LocalDate end) {
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);//日期计算，获得指定日期后1天的日期
-            dateList.add(begin);
-        }
-
-        List<Double> turnoverList = new ArrayList<>();
-        for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            Map map = new HashMap();
-            map.put("status", Orders.COMPLETED);
-            map.put("begin", beginTime);
-            map.put("end", endTime);
-
-//            根据动态条件统计营业额
-            Double turnover = orderMapper.sumByMap(map);
-            turnover = turnover == null ? 0.0 : turnover;
-            turnoverList.add(turnover);
-        }
+        TimeSeriesVO timeSeries = getDailySeries(begin, end);
 
         //数据封装
         return TurnoverReportVO.builder()
-                .dateList(StringUtils.join(dateList, ","))
-                .turnoverList(StringUtils.join(turnoverList, ","))
+                .dateList(StringUtils.join(timeSeries.getBucketList(), ","))
+                .turnoverList(StringUtils.join(timeSeries.getTurnoverList(), ','))
                 .build();
     }
 
@@ -90,27 +105,26 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
-        ArrayList<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = getDateList(begin, end);
 
-        ArrayList<Integer> newUserList = new ArrayList<>();
-        ArrayList<Integer> totalUserList = new ArrayList<>();
+//        区间开始前的用户总数，作为累计用户数的起点
+        Integer baseUser = getUserCount(null, LocalDateTime.of(begin, LocalTime.MIN).minusNanos(1));
 
-        dateList.forEach(date -> {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
+//        从每日汇总数据读取新增用户数，没有新增的日期补0
+        Map<LocalDate, DailyStatisticsDTO> dailyMap = toDailyMap(dailyStatisticsService.listByDate(begin, end));
 
-            Integer newUser = getUserCount(beginTime, endTime);
-            Integer totalUser = getUserCount(null, endTime);
+        ArrayList<Integer> newUserList = new ArrayList<>(dateList.size());
+        ArrayList<Integer> totalUserList = new ArrayList<>(dateList.size());
 
+//        累计用户数为新增用户数的前缀和
+        int totalUser = baseUser == null ? 0 : baseUser;
+        for (LocalDate date : dateList) {
+            DailyStatisticsDTO daily = dailyMap.get(date);
+            int newUser = daily == null || daily.getNewUsers() == null ? 0 : daily.getNewUsers();
+            totalUser += newUser;
             newUserList.add(newUser);
             totalUserList.add(totalUser);
-        });
+        }
 
         return UserReportVO.builder()
                 .dateList(StringUtils.join(dateList, ","))
@@ -128,57 +142,186 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
-        ArrayList<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
+        TimeSeriesVO timeSeries = getDailySeries(begin, end);
+
+//        时间区间内的总订单数、有效订单数
+        int totalOrderCount = 0;
+        int validOrderCount = 0;
+        for (int i = 0; i < timeSeries.getBucketList().length; i++) {
+            totalOrderCount += timeSeries.getOrderCountList()[i];
+            validOrderCount += timeSeries.getValidOrderCountList()[i];
         }
 
-//        每天订单总数集合
-        ArrayList<Integer> orderCountList = new ArrayList<>();
-
-//        媒体有效订单数集合
-        ArrayList<Integer> validOrderCountList = new ArrayList<>();
-
-        dateList.forEach(date->{
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-//            查询每天总数
-            Integer orderCount = getOrderCount(beginTime, endTime, null);
-
-//            查询每天有效订单数
-            Integer validOrderCount = getOrderCount(beginTime, endTime, Orders.COMPLETED);
-
-            orderCountList.add(orderCount);
-            validOrderCountList.add(validOrderCount);
-        });
-
-//        时间区间内的总订单数
-        Integer totalOrderCount = orderCountList.stream().reduce(Integer::sum).get();
-
-//        区间时间内有效订单数
-        Integer validOrderCount = validOrderCountList.stream().reduce(Integer::sum).get();
-
 //        订单完成率
         Double orderCompletionRate = 0.0;
         if (totalOrderCount != 0) {
-            orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount;
+            orderCompletionRate = (double) validOrderCount / totalOrderCount;
         }
 
 
         return OrderReportVO.builder()
-                .dateList(StringUtils.join(dateList, ","))
-                .orderCountList(StringUtils.join(orderCountList, ","))
-                .validOrderCountList(StringUtils.join(validOrderCountList, ","))
+                .dateList(StringUtils.join(timeSeries.getBucketList(), ","))
+                .orderCountList(StringUtils.join(timeSeries.getOrderCountList(), ','))
+                .validOrderCountList(StringUtils.join(timeSeries.getValidOrderCountList(), ','))
                 .totalOrderCount(totalOrderCount)
                 .validOrderCount(validOrderCount)
                 .orderCompletionRate(orderCompletionRate)
                 .build();
     }
 
+    /**
+     * 按小时、天、周、月统计订单数量和营业额，可按订单状态过滤、按分类统计
+     *
+     * @param timeSeriesQueryDTO
+     * @return
+     */
+    @Override
+    public TimeSeriesVO getTimeSeries(TimeSeriesQueryDTO timeSeriesQueryDTO) {
+        return timeSeriesService.aggregate(timeSeriesQueryDTO);
+    }
+
+    /**
+     * 订单分析：按小时、支付方式、分类、商品统计
+     * 开启内存列存储且数据已加载时从内存中统计，否则查询数据库
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public OrderAnalyticsVO getOrderAnalytics(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_RANGE_INVALID);
+        }
+        int topDishes = reportProperties.getAnalyticsTopDishes();
+        OrderAnalyticsVO orderAnalyticsVO = orderColumnStore.covers(begin, end)
+                ? orderColumnStore.query(begin, end, topDishes)
+                : queryOrderAnalytics(begin, end, topDishes);
+
+        //填写分类名称，已删除或停用的分类没有名称
+        Map<Long, String> categoryNames = new HashMap<>();
+        for (Category category : categoryMapper.list(null)) {
+            categoryNames.put(category.getId(), category.getName());
+        }
+        long[] categoryIdList = orderAnalyticsVO.getCategoryIdList();
+        String[] categoryNameList = new String[categoryIdList.length];
+        for (int i = 0; i < categoryIdList.length; i++) {
+            categoryNameList[i] = categoryNames.get(categoryIdList[i]);
+        }
+        orderAnalyticsVO.setCategoryNameList(categoryNameList);
+        return orderAnalyticsVO;
+    }
+
+    /**
+     * 从数据库统计订单分析数据
+     */
+    private OrderAnalyticsVO queryOrderAnalytics(LocalDate begin, LocalDate end, int topDishes) {
+        LocalDateTime beginTime = begin.atStartOfDay();
+        LocalDateTime endTime = end.plusDays(1).atStartOfDay();
+
+        int[] hourOrderCountList = new int[24];
+        double[] hourTurnoverList = new double[24];
+        for (AnalyticsRowDTO row : analyticsMapper.sumByHour(beginTime, endTime)) {
+            hourOrderCountList[row.getGroupKey().intValue()] = row.getOrderCount();
+            hourTurnoverList[row.getGroupKey().intValue()] = row.getTurnover();
+        }
+
+        //支付方式：1微信，2支付宝
+        int[] payMethodList = {1, 2};
+        int[] payMethodOrderCountList = new int[2];
+        double[] payMethodTurnoverList = new double[2];
+        for (AnalyticsRowDTO row : analyticsMapper.sumByPayMethod(beginTime, endTime)) {
+            if (row.getGroupKey() != null && row.getGroupKey() >= 1 && row.getGroupKey() <= 2) {
+                payMethodOrderCountList[row.getGroupKey().intValue() - 1] = row.getOrderCount();
+                payMethodTurnoverList[row.getGroupKey().intValue() - 1] = row.getTurnover();
+            }
+        }
+
+        //分类按营业额降序
+        List<AnalyticsRowDTO> categoryRows = analyticsMapper.sumByCategory(beginTime, endTime);
+        categoryRows.sort((a, b) -> Double.compare(b.getTurnover(), a.getTurnover()));
+        long[] categoryIdList = new long[categoryRows.size()];
+        int[] categoryNumberList = new int[categoryRows.size()];
+        double[] categoryTurnoverList = new double[categoryRows.size()];
+        for (int i = 0; i < categoryRows.size(); i++) {
+            AnalyticsRowDTO row = categoryRows.get(i);
+            categoryIdList[i] = row.getGroupKey() == null ? 0L : row.getGroupKey();
+            categoryNumberList[i] = row.getNumber();
+            categoryTurnoverList[i] = row.getTurnover();
+        }
+
+        List<AnalyticsRowDTO> dishRows = analyticsMapper.sumByDish(beginTime, endTime, topDishes);
+        String[] dishNameList = new String[dishRows.size()];
+        int[] dishNumberList = new int[dishRows.size()];
+        double[] dishTurnoverList = new double[dishRows.size()];
+        for (int i = 0; i < dishRows.size(); i++) {
+            AnalyticsRowDTO row = dishRows.get(i);
+            dishNameList[i] = row.getName();
+            dishNumberList[i] = row.getNumber();
+            dishTurnoverList[i] = row.getTurnover();
+        }
+
+        return OrderAnalyticsVO.builder()
+                .hourOrderCountList(hourOrderCountList)
+                .hourTurnoverList(hourTurnoverList)
+                .payMethodList(payMethodList)
+                .payMethodOrderCountList(payMethodOrderCountList)
+                .payMethodTurnoverList(payMethodTurnoverList)
+                .categoryIdList(categoryIdList)
+                .categoryNumberList(categoryNumberList)
+                .categoryTurnoverList(categoryTurnoverList)
+                .dishNameList(dishNameList)
+                .dishNumberList(dishNumberList)
+                .dishTurnoverList(dishTurnoverList)
+                .build();
+    }
+
+    /**
+     * 按天统计时间区间内的全部订单，没有订单的日期为0
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    private TimeSeriesVO getDailySeries(LocalDate begin, LocalDate end) {
+        TimeSeriesQueryDTO timeSeriesQueryDTO = new TimeSeriesQueryDTO();
+        timeSeriesQueryDTO.setBegin(begin);
+        timeSeriesQueryDTO.setEnd(end);
+        return timeSeriesService.aggregate(timeSeriesQueryDTO);
+    }
+
+    /**
+     * 获取时间区间内的每一天
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    private List<LocalDate> getDateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dateList = new ArrayList<>();
+        dateList.add(begin);
+
+        while (!begin.equals(end)) {
+            begin = begin.plusDays(1);//日期计算，获得指定日期后1天的日期
+            dateList.add(begin);
+        }
+        return dateList;
+    }
+
+    /**
+     * 将按天分组的统计结果转为日期到统计数据的映射
+     *
+     * @param dailyList
+     * @return
+     */
+    private Map<LocalDate, DailyStatisticsDTO> toDailyMap(List<DailyStatisticsDTO> dailyList) {
+        Map<LocalDate, DailyStatisticsDTO> dailyMap = new HashMap<>();
+        for (DailyStatisticsDTO daily : dailyList) {
+            dailyMap.put(daily.getDate(), daily);
+        }
+        return dailyMap;
+    }
+
     /**
      * 查询指定时间区间内的销量排名top10
      *
@@ -188,10 +331,7 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public SalesTop10ReportVO getSalesTop10(LocalDate begin, LocalDate end) {
-        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
-        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
-
-        List<GoodsSalesDTO> goodsSalesDTOList = orderMapper.getSalesTop10(beginTime, endTime);
+        List<GoodsSalesDTO> goodsSalesDTOList = dailyStatisticsService.getSalesTop(begin, end, 10);
 
         String nameList = StringUtils.join(goodsSalesDTOList.stream().map(GoodsSalesDTO::getName).collect(Collectors.toList()), ",");
         String numberList = StringUtils.join(goodsSalesDTOList.stream().map(GoodsSalesDTO::getNumber).collect(Collectors.toList()), ",");
@@ -206,29 +346,76 @@ public class ReportServiceImpl implements ReportService {
     public void exportBusinessData(HttpServletResponse response) {
         LocalDate begin = LocalDate.now().minusDays(30);
         LocalDate end = LocalDate.now().minusDays(1);
-        //查询概览运营数据，提供给Excel模板文件
-        BusinessDataVO businessData = workspaceService.getBusinessData(LocalDateTime.of(begin,LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX));
-        InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
         try {
-            //基于提供好的模板文件创建一个新的Excel表格对象
-            XSSFWorkbook excel = new XSSFWorkbook(inputStream);
+            //设置响应头，文件名中的中文需要编码
+            String fileName = URLEncoder.encode("运营数据报表" + begin + "至" + end + ".xlsx", "UTF-8").replace("+", "%20");
+            response.setContentType(EXCEL_CONTENT_TYPE);
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"; filename*=UTF-8''" + fileName);
+
+            //直接写入响应输出流，不在内存中缓存整个文件
+            ServletOutputStream out = response.getOutputStream();
+            writeBusinessDataExcel(begin, end, out);
+            out.flush();
+        } catch (IOException e) {
+            log.error("导出运营数据报表失败", e);
+        }
+    }
+
+    /**
+     * 生成运营数据报表
+     * 明细数据一次读取；区间正好30天时使用报表模板，否则流式生成不带模板的表格
+     * @param begin
+     * @param end
+     * @param out
+     * @throws IOException
+     */
+    @Override
+    public void writeBusinessDataExcel(LocalDate begin, LocalDate end, OutputStream out) throws IOException {
+        //查询每天的汇总数据，没有数据的日期补0
+        Map<LocalDate, DailyStatisticsDTO> dailyMap = toDailyMap(dailyStatisticsService.listByDate(begin, end));
+        List<LocalDate> dateList = getDateList(begin, end);
+
+        //区间汇总数据由每天的数据累加得到
+        DailyStatisticsDTO total = DailyStatisticsDTO.builder().turnover(0.0).orderCount(0).validOrderCount(0).newUsers(0).build();
+        for (DailyStatisticsDTO daily : dailyMap.values()) {
+            total.setTurnover(total.getTurnover() + (daily.getTurnover() == null ? 0.0 : daily.getTurnover()));
+            total.setOrderCount(total.getOrderCount() + (daily.getOrderCount() == null ? 0 : daily.getOrderCount()));
+            total.setValidOrderCount(total.getValidOrderCount() + (daily.getValidOrderCount() == null ? 0 : daily.getValidOrderCount()));
+            total.setNewUsers(total.getNewUsers() + (daily.getNewUsers() == null ? 0 : daily.getNewUsers()));
+        }
+
+        if (dateList.size() == TEMPLATE_DAYS) {
+            fillTemplate(begin, end, dateList, dailyMap, total, out);
+        } else {
+            writeSheet(begin, end, dateList, dailyMap, total, out);
+        }
+    }
+
+    /**
+     * 填写报表模板
+     * 每次导出从缓存的模板内容创建独立的工作簿，并发导出互不影响
+     * @throws IOException
+     */
+    private void fillTemplate(LocalDate begin, LocalDate end, List<LocalDate> dateList,
+                              Map<LocalDate, DailyStatisticsDTO> dailyMap, DailyStatisticsDTO total, OutputStream out) throws IOException {
+        try (XSSFWorkbook excel = new XSSFWorkbook(new ByteArrayInputStream(getExportTemplate()))) {
             //获得Excel文件中的一个Sheet页
             XSSFSheet sheet = excel.getSheet("Sheet1");
 
             sheet.getRow(1).getCell(1).setCellValue(begin + "至" + end);
-            //获得第4行
+            //概览数据：第4、5行
+            BusinessDataVO businessData = toBusinessData(total);
             XSSFRow row = sheet.getRow(3);
-            //获取单元格
             row.getCell(2).setCellValue(businessData.getTurnover());
             row.getCell(4).setCellValue(businessData.getOrderCompletionRate());
             row.getCell(6).setCellValue(businessData.getNewUsers());
             row = sheet.getRow(4);
             row.getCell(2).setCellValue(businessData.getValidOrderCount());
             row.getCell(4).setCellValue(businessData.getUnitPrice());
-            for (int i = 0; i < 30; i++) {
-                LocalDate date = begin.plusDays(i);
-                //准备明细数据
-                businessData = workspaceService.getBusinessData(LocalDateTime.of(date,LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
+            //明细数据：从第8行开始，每天一行
+            for (int i = 0; i < dateList.size(); i++) {
+                LocalDate date = dateList.get(i);
+                businessData = toBusinessData(dailyMap.get(date));
                 row = sheet.getRow(7 + i);
                 row.getCell(1).setCellValue(date.toString());
                 row.getCell(2).setCellValue(businessData.getTurnover());
@@ -237,33 +424,100 @@ public class ReportServiceImpl implements ReportService {
                 row.getCell(5).setCellValue(businessData.getUnitPrice());
                 row.getCell(6).setCellValue(businessData.getNewUsers());
             }
-            //通过输出流将文件下载到客户端浏览器中
-            ServletOutputStream out = response.getOutputStream();
             excel.write(out);
-            //关闭资源
-            out.flush();
-            out.close();
+        }
+    }
+
+    /**
+     * 不使用模板，流式生成运营数据报表，内存中只保留最近的少量行
+     * @throws IOException
+     */
+    private void writeSheet(LocalDate begin, LocalDate end, List<LocalDate> dateList,
+                            Map<LocalDate, DailyStatisticsDTO> dailyMap, DailyStatisticsDTO total, OutputStream out) throws IOException {
+        SXSSFWorkbook excel = new SXSSFWorkbook(100);
+        try {
+            Sheet sheet = excel.createSheet("Sheet1");
+            sheet.createRow(0).createCell(0).setCellValue("运营数据报表");
+            sheet.createRow(1).createCell(0).setCellValue("时间：" + begin + "至" + end);
+
+            //表头
+            String[] titles = {"日期", "营业额", "有效订单", "订单完成率", "平均客单价", "新增用户数"};
+            Row row = sheet.createRow(3);
+            for (int i = 0; i < titles.length; i++) {
+                row.createCell(i).setCellValue(titles[i]);
+            }
+
+            //明细数据，每天一行，最后一行为合计
+            int rowIndex = 4;
+            for (LocalDate date : dateList) {
+                writeBusinessDataRow(sheet.createRow(rowIndex++), date.toString(), toBusinessData(dailyMap.get(date)));
+            }
+            writeBusinessDataRow(sheet.createRow(rowIndex), "合计", toBusinessData(total));
+
+            excel.write(out);
+        } finally {
+            //删除生成过程中产生的临时文件
+            excel.dispose();
             excel.close();
+        }
+    }
+
+    private void writeBusinessDataRow(Row row, String title, BusinessDataVO businessData) {
+        row.createCell(0).setCellValue(title);
+        row.createCell(1).setCellValue(businessData.getTurnover());
+        row.createCell(2).setCellValue(businessData.getValidOrderCount());
+        row.createCell(3).setCellValue(businessData.getOrderCompletionRate());
+        row.createCell(4).setCellValue(businessData.getUnitPrice());
+        row.createCell(5).setCellValue(businessData.getNewUsers());
+    }
 
-        }catch (IOException e){
-            e.printStackTrace();
+    /**
+     * 获取报表模板文件内容，首次使用时从classpath读取
+     * @return
+     * @throws IOException
+     */
+    private byte[] getExportTemplate() throws IOException {
+        byte[] template = exportTemplate;
+        if (template == null) {
+            synchronized (this) {
+                if (exportTemplate == null) {
+                    try (InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream(EXPORT_TEMPLATE)) {
+                        if (inputStream == null) {
+                            throw new IOException("报表模板不存在：" + EXPORT_TEMPLATE);
+                        }
+                        exportTemplate = StreamUtils.copyToByteArray(inputStream);
+                    }
+                }
+                template = exportTemplate;
+            }
         }
+        return template;
     }
 
     /**
-     * 根据时间区间统计指定状态的订单数量
-     *
-     * @param beginTime
-     * @param endTime
-     * @param status
+     * 根据汇总数据计算营业额、订单完成率、平均客单价等运营数据
+     * @param daily
      * @return
      */
-    private Integer getOrderCount(LocalDateTime beginTime, LocalDateTime endTime, Integer status) {
-        Map map = new HashMap();
-        map.put("status", status);
-        map.put("begin", beginTime);
-        map.put("end", endTime);
-        return orderMapper.countByMap(map);
+    private BusinessDataVO toBusinessData(DailyStatisticsDTO daily) {
+        double turnover = daily == null || daily.getTurnover() == null ? 0.0 : daily.getTurnover();
+        int totalOrderCount = daily == null || daily.getOrderCount() == null ? 0 : daily.getOrderCount();
+        int validOrderCount = daily == null || daily.getValidOrderCount() == null ? 0 : daily.getValidOrderCount();
+        int newUsers = daily == null || daily.getNewUsers() == null ? 0 : daily.getNewUsers();
+
+        double orderCompletionRate = 0.0;
+        double unitPrice = 0.0;
+        if (totalOrderCount != 0 && validOrderCount != 0) {
+            orderCompletionRate = (double) validOrderCount / totalOrderCount;
+            unitPrice = turnover / validOrderCount;
+        }
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(newUsers)
+                .build();
     }
 
     /**
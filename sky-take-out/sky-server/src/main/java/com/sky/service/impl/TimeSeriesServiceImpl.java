@@ -0,0 +1,164 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.dto.DailyStatisticsDTO;
+import com.sky.dto.TimeBucketDTO;
+import com.sky.dto.TimeSeriesQueryDTO;
+import com.sky.entity.Category;
+import com.sky.enumeration.TimeGranularity;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.CategoryMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.service.DailyStatisticsService;
+import com.sky.service.TimeSeriesService;
+import com.sky.vo.CategorySeriesVO;
+import com.sky.vo.TimeSeriesVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分时统计
+ * 所有区间的数据由一次分组查询得到：按天、周、月统计全部订单时从每日汇总数据合并，
+ * 按小时统计或指定了订单状态时对订单表做一次分组聚合，按分类统计时再做一次按分类的分组聚合
+ */
+@Service
+@Slf4j
+public class TimeSeriesServiceImpl implements TimeSeriesService {
+
+    private static final DateTimeFormatter BUCKET_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter HOUR_LABEL_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private CategoryMapper categoryMapper;
+
+    @Autowired
+    private DailyStatisticsService dailyStatisticsService;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
+    /**
+     * 按时间区间统计订单数量和营业额
+     * @param timeSeriesQueryDTO
+     * @return
+     */
+    @Override
+    public TimeSeriesVO aggregate(TimeSeriesQueryDTO timeSeriesQueryDTO) {
+        TimeGranularity granularity = TimeGranularity.of(timeSeriesQueryDTO.getGranularity());
+        if (granularity == null) {
+            throw new ReportBusinessException(MessageConstant.REPORT_GRANULARITY_INVALID);
+        }
+        LocalDate begin = timeSeriesQueryDTO.getBegin();
+        LocalDate end = timeSeriesQueryDTO.getEnd();
+        if (begin == null || end == null || begin.isAfter(end)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_RANGE_INVALID);
+        }
+
+        //区间的开始时间及其下标，首尾区间可能超出查询日期，只统计查询日期内的订单
+        LocalDateTime beginTime = begin.atStartOfDay();
+        LocalDateTime endTime = end.plusDays(1).atStartOfDay();
+        Map<LocalDateTime, Integer> bucketIndex = new LinkedHashMap<>();
+        for (LocalDateTime bucket = granularity.truncate(beginTime); bucket.isBefore(endTime); bucket = granularity.next(bucket)) {
+            if (bucketIndex.size() >= reportProperties.getTimeSeriesMaxBuckets()) {
+                throw new ReportBusinessException(MessageConstant.REPORT_RANGE_INVALID);
+            }
+            bucketIndex.put(bucket, bucketIndex.size());
+        }
+
+        int size = bucketIndex.size();
+        String[] bucketList = new String[size];
+        for (Map.Entry<LocalDateTime, Integer> entry : bucketIndex.entrySet()) {
+            bucketList[entry.getValue()] = granularity == TimeGranularity.HOUR
+                    ? entry.getKey().format(HOUR_LABEL_FORMATTER) : entry.getKey().toLocalDate().toString();
+        }
+        int[] orderCountList = new int[size];
+        int[] validOrderCountList = new int[size];
+        double[] turnoverList = new double[size];
+
+        Integer status = timeSeriesQueryDTO.getStatus();
+        if (granularity != TimeGranularity.HOUR && status == null) {
+            //每日汇总数据已包含全部订单，合并到所在区间
+            for (DailyStatisticsDTO daily : dailyStatisticsService.listByDate(begin, end)) {
+                int i = bucketIndex.get(granularity.truncate(daily.getDate().atStartOfDay()));
+                orderCountList[i] += daily.getOrderCount() == null ? 0 : daily.getOrderCount();
+                validOrderCountList[i] += daily.getValidOrderCount() == null ? 0 : daily.getValidOrderCount();
+                turnoverList[i] += daily.getTurnover() == null ? 0.0 : daily.getTurnover();
+            }
+        } else {
+            for (TimeBucketDTO row : orderMapper.sumByTimeBucket(beginTime, endTime, granularity.name(), status)) {
+                Integer i = bucketIndex.get(LocalDateTime.parse(row.getBucket(), BUCKET_FORMATTER));
+                if (i != null) {
+                    accumulate(row, i, orderCountList, validOrderCountList, turnoverList);
+                }
+            }
+        }
+
+        List<CategorySeriesVO> categoryList = null;
+        if (Boolean.TRUE.equals(timeSeriesQueryDTO.getByCategory())) {
+            categoryList = aggregateByCategory(beginTime, endTime, granularity, status, bucketIndex);
+        }
+
+        return TimeSeriesVO.builder()
+                .granularity(granularity.name().toLowerCase())
+                .bucketList(bucketList)
+                .orderCountList(orderCountList)
+                .validOrderCountList(validOrderCountList)
+                .turnoverList(turnoverList)
+                .categoryList(categoryList)
+                .build();
+    }
+
+    /**
+     * 按分类统计，没有订单的分类不返回
+     * @return
+     */
+    private List<CategorySeriesVO> aggregateByCategory(LocalDateTime beginTime, LocalDateTime endTime, TimeGranularity granularity,
+                                                       Integer status, Map<LocalDateTime, Integer> bucketIndex) {
+        int size = bucketIndex.size();
+        Map<Long, CategorySeriesVO> categoryMap = new LinkedHashMap<>();
+        for (TimeBucketDTO row : orderMapper.sumByTimeBucketAndCategory(beginTime, endTime, granularity.name(), status)) {
+            Integer i = bucketIndex.get(LocalDateTime.parse(row.getBucket(), BUCKET_FORMATTER));
+            if (i == null) {
+                continue;
+            }
+            CategorySeriesVO series = categoryMap.computeIfAbsent(row.getCategoryId(), categoryId -> CategorySeriesVO.builder()
+                    .categoryId(categoryId)
+                    .orderCountList(new int[size])
+                    .validOrderCountList(new int[size])
+                    .turnoverList(new double[size])
+                    .build());
+            accumulate(row, i, series.getOrderCountList(), series.getValidOrderCountList(), series.getTurnoverList());
+        }
+
+        //填写分类名称，已删除或停用的分类没有名称
+        Map<Long, String> categoryNames = new HashMap<>();
+        for (Category category : categoryMapper.list(null)) {
+            categoryNames.put(category.getId(), category.getName());
+        }
+        List<CategorySeriesVO> categoryList = new ArrayList<>(categoryMap.values());
+        for (CategorySeriesVO series : categoryList) {
+            series.setCategoryName(categoryNames.get(series.getCategoryId()));
+        }
+        return categoryList;
+    }
+
+    private void accumulate(TimeBucketDTO row, int i, int[] orderCountList, int[] validOrderCountList, double[] turnoverList) {
+        orderCountList[i] += row.getOrderCount() == null ? 0 : row.getOrderCount();
+        validOrderCountList[i] += row.getValidOrderCount() == null ? 0 : row.getValidOrderCount();
+        turnoverList[i] += row.getTurnover() == null ? 0.0 : row.getTurnover();
+    }
+}
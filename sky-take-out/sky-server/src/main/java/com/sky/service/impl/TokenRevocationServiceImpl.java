@@ -0,0 +1,142 @@
+package com.sky.service.impl;
+
+import com.sky.properties.JwtProperties;
+import com.sky.service.TokenRevocationService;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 令牌吊销
+ * 吊销记录按主体保存吊销时间，签发时间早于该时间的令牌失效；记录保存在redis中，
+ * 每个节点在本地保存一份，通过redis频道接收新的吊销记录并定期全量同步，拦截器校验时只查询本地记录
+ */
+@Service
+@Slf4j
+public class TokenRevocationServiceImpl implements TokenRevocationService, MessageListener, InitializingBean {
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private JwtProperties jwtProperties;
+
+    //本地的吊销记录，key为主体，value为吊销时间戳
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    //上一次从redis同步到的吊销记录
+    private volatile Map<String, Long> lastSynced = new HashMap<>();
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            sync();
+        } catch (Exception e) {
+            //redis暂不可用时等待定时同步
+            log.warn("加载令牌吊销记录失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 吊销指定主体在此之前签发的所有令牌
+     * 先更新本地记录，再写入redis并通知其他节点
+     * @param subjectClaim
+     * @param id
+     */
+    @Override
+    public void revoke(String subjectClaim, Long id) {
+        String subject = subjectClaim + ":" + id;
+        String stamp = String.valueOf(System.currentTimeMillis());
+        update(subject, stamp);
+        stringRedisTemplate.opsForHash().put(jwtProperties.getRevocationKey(), subject, stamp);
+        stringRedisTemplate.convertAndSend(jwtProperties.getRevocationChannel(), subject + "=" + stamp);
+        log.info("吊销令牌：{}，{}之前签发的令牌失效", subject, stamp);
+    }
+
+    /**
+     * 判断令牌是否已被吊销，没有签发时间的令牌视为在吊销之前签发
+     * 令牌的签发时间只精确到秒，按秒比较，吊销的同一秒内签发的令牌同样视为已吊销
+     * @param subjectClaim
+     * @param id
+     * @param claims
+     * @return
+     */
+    @Override
+    public boolean isRevoked(String subjectClaim, Long id, Claims claims) {
+        if (revoked.isEmpty()) {
+            return false;
+        }
+        Long stamp = revoked.get(subjectClaim + ":" + id);
+        if (stamp == null) {
+            return false;
+        }
+        Date issuedAt = claims.getIssuedAt();
+        return issuedAt == null || issuedAt.getTime() / 1000 <= stamp / 1000;
+    }
+
+    /**
+     * 从redis全量同步吊销记录，超过令牌最长有效期的记录对应的令牌都已过期，从redis和本地删除
+     * 同步与吊销、吊销通知并发执行，本地只删除上次同步到、本次已不存在且未被更新的记录，不会丢失同步期间新增的记录
+     */
+    @Override
+    public void sync() {
+        String key = jwtProperties.getRevocationKey();
+        long expireBefore = System.currentTimeMillis() - Math.max(jwtProperties.getAdminTtl(), jwtProperties.getUserTtl());
+        Map<String, Long> latest = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : stringRedisTemplate.opsForHash().entries(key).entrySet()) {
+            String subject = entry.getKey().toString();
+            long stamp = Long.parseLong(entry.getValue().toString());
+            if (stamp < expireBefore) {
+                stringRedisTemplate.opsForHash().delete(key, subject);
+            } else {
+                latest.put(subject, stamp);
+            }
+        }
+        latest.forEach((subject, stamp) -> revoked.merge(subject, stamp, Math::max));
+
+        lastSynced.forEach((subject, stamp) -> {
+            if (!latest.containsKey(subject)) {
+                revoked.remove(subject, stamp);
+            }
+        });
+        revoked.forEach((subject, stamp) -> {
+            if (stamp < expireBefore) {
+                revoked.remove(subject, stamp);
+            }
+        });
+        lastSynced = latest;
+    }
+
+    /**
+     * 收到其他节点的吊销通知，格式为 主体=吊销时间戳
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.lastIndexOf('=');
+        if (index > 0) {
+            update(body.substring(0, index), body.substring(index + 1));
+        }
+    }
+
+    private void update(String subject, String stamp) {
+        try {
+            revoked.merge(subject, Long.parseLong(stamp), Math::max);
+        } catch (NumberFormatException e) {
+            log.warn("令牌吊销记录格式错误：{}={}", subject, stamp);
+        }
+    }
+}
@@ -5,22 +5,32 @@ import com.alibaba.fastjson.JSONObject;
 import com.sky.constant.MessageConstant;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
+import com.sky.event.UserRegisteredEvent;
 import com.sky.exception.LoginFailedException;
 import com.sky.mapper.UserMapper;
+import com.sky.properties.ResilienceProperties;
 import com.sky.properties.WeChatProperties;
 import com.sky.service.UserService;
-import com.sky.utils.HttpClientUtil;
+import com.sky.utils.AsyncHttpClientUtil;
+import com.sky.utils.DependencyGuard;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Service
 @Slf4j
-public class UserServiceImpl implements UserService {
+public class UserServiceImpl implements UserService, InitializingBean {
     //微信服务接口地址
     public static final String WX_LOGIN = "https://api.weixin.qq.com/sns/jscode2session";
 
@@ -30,34 +40,100 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private ResilienceProperties resilienceProperties;
+
+    @Autowired
+    @Qualifier("bizExecutor")
+    private Executor bizExecutor;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    //用户身份缓存：openid到用户id、用户id到openid，两者的对应关系注册后不再变化，缓存不需要失效
+    private Map<String, Long> idByOpenid;
+    private Map<Long, String> openidById;
+
+    @Override
+    public void afterPropertiesSet() {
+        idByOpenid = lruMap(weChatProperties.getIdentityCacheSize());
+        openidById = lruMap(weChatProperties.getIdentityCacheSize());
+    }
+
     /**
      * 微信登录
+     * 调用微信接口期间不占用请求线程，拿到openid后在业务线程池中查询或注册用户
      * @param userLoginDTO
      * @return
      */
     @Override
-    public User wxLogin(UserLoginDTO userLoginDTO) {
+    public CompletableFuture<User> wxLogin(UserLoginDTO userLoginDTO) {
 //        调用微信接口服务，获取当前微信用户的Openid
-        String openid = getOpenid(userLoginDTO.getCode());
+//        调用时间超出预算时快速失败，微信接口变慢时不会让请求长时间挂起
+        CompletableFuture<String> openidFuture = DependencyGuard.withBudget(
+                getOpenid(userLoginDTO.getCode()), resilienceProperties.getLoginTimeBudget());
+        return openidFuture.thenApplyAsync(openid -> {
+//            判断openId是否为空，如果为空标识登录失败，抛出业务异常
+            if (openid == null) {
+                throw new LoginFailedException(MessageConstant.LOGIN_FAILED);
+            }
+
+//            老用户直接使用缓存的身份，开店时集中登录不需要逐个查询用户表
+            Long userId = idByOpenid.get(openid);
+            if (userId != null) {
+                return User.builder().id(userId).openid(openid).build();
+            }
+
+//            判断当前用户是否为新用户
+            User user = userMapper.getByOpenId(openid);
+
+//            如果是新用户,自动完成注册
+            if (user == null) {
+                user = User.builder()
+                        .openid(openid)
+                        .createTime(LocalDateTime.now()).build();
+                userMapper.insert(user);
+                applicationEventPublisher.publishEvent(new UserRegisteredEvent(user.getId(), user.getCreateTime()));
+            }
 
-//        判断openId是否为空，如果为空标识登录失败，抛出业务异常
+            cacheIdentity(user.getId(), openid);
+//            返回这个用户对象
+            return user;
+        }, bizExecutor);
+    }
+
+    /**
+     * 查询用户的openid，优先从本地缓存读取
+     * @param userId
+     * @return
+     */
+    @Override
+    public String getOpenid(Long userId) {
+        String openid = openidById.get(userId);
         if (openid == null) {
-            throw new LoginFailedException(MessageConstant.LOGIN_FAILED);
+            User user = userMapper.getById(String.valueOf(userId));
+            if (user != null) {
+                openid = user.getOpenid();
+                cacheIdentity(userId, openid);
+            }
         }
+        return openid;
+    }
 
-//        判断当前用户是否为新用户
-        User user = userMapper.getByOpenId(openid);
-
-//        如果是新用户,自动完成注册
-        if (user == null) {
-            user = User.builder()
-                    .openid(openid)
-                    .createTime(LocalDateTime.now()).build();
-            userMapper.insert(user);
+    private void cacheIdentity(Long userId, String openid) {
+        if (userId != null && openid != null) {
+            idByOpenid.put(openid, userId);
+            openidById.put(userId, openid);
         }
+    }
 
-//        返回这个用户对象
-        return user;
+    private static <K, V> Map<K, V> lruMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        });
     }
 
     /**
@@ -65,17 +141,16 @@ public class UserServiceImpl implements UserService {
      * @param code
      * @return
      */
-    private String getOpenid(String code) {
+    private CompletableFuture<String> getOpenid(String code) {
         //调用微信接口服务，获得当前微信用户的openid
         Map<String, String> map = new HashMap<>();
         map.put("appid",weChatProperties.getAppid());
         map.put("secret",weChatProperties.getSecret());
         map.put("js_code",code);
         map.put("grant_type","authorization_code");
-        String json = HttpClientUtil.doGet(WX_LOGIN, map);
-
-        JSONObject jsonObject = JSON.parseObject(json);
-        String openid = jsonObject.getString("openid");
-        return openid;
+        return AsyncHttpClientUtil.doGet(WX_LOGIN, map).thenApply(json -> {
+            JSONObject jsonObject = JSON.parseObject(json);
+            return jsonObject == null ? null : jsonObject.getString("openid");
+        });
     }
 }
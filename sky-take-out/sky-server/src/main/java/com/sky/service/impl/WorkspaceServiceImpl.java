@@ -1,33 +1,46 @@
 package com.sky.service.impl;
 
 import com.sky.constant.StatusConstant;
+import com.sky.dto.DailyStatisticsDTO;
 import com.sky.entity.Orders;
+import com.sky.mapper.DailyStatisticsMapper;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.UserMapper;
+import com.sky.properties.ReportProperties;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import com.sky.vo.WorkspaceOverViewVO;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
-public class WorkspaceServiceImpl implements WorkspaceService {
+public class WorkspaceServiceImpl implements WorkspaceService, InitializingBean {
 
     @Autowired
     private OrderMapper orderMapper;
 
     @Autowired
-    private UserMapper userMapper;
+    private DailyStatisticsMapper dailyStatisticsMapper;
 
     @Autowired
     private DishMapper dishMapper;
@@ -35,6 +48,27 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     @Autowired
     private SetmealMapper setmealMapper;
 
+    @Autowired
+    private ReportProperties reportProperties;
+
+    @Autowired
+    @Qualifier("queryExecutor")
+    private Executor queryExecutor;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    //统计查询所在的只读事务，超时时间作为语句的查询超时，超过截止时间的查询在数据库中也会被取消
+    private TransactionTemplate queryTransactionTemplate;
+
+    @Override
+    public void afterPropertiesSet() {
+        queryTransactionTemplate = new TransactionTemplate(transactionManager);
+        queryTransactionTemplate.setReadOnly(true);
+        //事务超时以秒为单位，向上取整
+        queryTransactionTemplate.setTimeout((int) Math.max(1, (reportProperties.getWorkspaceQueryTimeout() + 999) / 1000));
+    }
+
     /**
      * 根据时间段统计营业数据
      * @param begin
@@ -50,20 +84,17 @@ public class WorkspaceServiceImpl implements WorkspaceService {
          * 新增用户：当日新增用户的数量
          */
 
-        Map map = new HashMap();
-        map.put("begin",begin);
-        map.put("end",end);
+//        从每日汇总表读取，区间按天计算
+        DailyStatisticsDTO total = dailyStatisticsMapper.sumByDate(begin.toLocalDate(), end.toLocalDate());
 
-        //查询总订单数
-        Integer totalOrderCount = orderMapper.countByMap(map);
+        //总订单数
+        Integer totalOrderCount = total == null || total.getOrderCount() == null ? 0 : total.getOrderCount();
 
-        map.put("status", Orders.COMPLETED);
         //营业额
-        Double turnover = orderMapper.sumByMap(map);
-        turnover = turnover == null? 0.0 : turnover;
+        Double turnover = total == null || total.getTurnover() == null ? 0.0 : total.getTurnover();
 
         //有效订单数
-        Integer validOrderCount = orderMapper.countByMap(map);
+        Integer validOrderCount = total == null || total.getValidOrderCount() == null ? 0 : total.getValidOrderCount();
 
         Double unitPrice = 0.0;
 
@@ -76,7 +107,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
         }
 
         //新增用户数
-        Integer newUsers = userMapper.countByMap(map);
+        Integer newUsers = total == null || total.getNewUsers() == null ? 0 : total.getNewUsers();
 
         return BusinessDataVO.builder()
                 .turnover(turnover)
@@ -94,73 +125,168 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public OrderOverViewVO getOrderOverView() {
-        Map map = new HashMap();
-        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
-        map.put("status", Orders.TO_BE_CONFIRMED);
+        return orderOverView(newDeadline()).get();
+    }
 
-        //待接单
-        Integer waitingOrders = orderMapper.countByMap(map);
+    /**
+     * 查询菜品总览
+     *
+     * @return
+     */
+    public DishOverViewVO getDishOverView() {
+        return dishOverView(newDeadline()).get();
+    }
 
-        //待派送
-        map.put("status", Orders.CONFIRMED);
-        Integer deliveredOrders = orderMapper.countByMap(map);
+    /**
+     * 查询套餐总览
+     *
+     * @return
+     */
+    public SetmealOverViewVO getSetmealOverView() {
+        return setmealOverView(newDeadline()).get();
+    }
 
-        //已完成
-        map.put("status", Orders.COMPLETED);
-        Integer completedOrders = orderMapper.countByMap(map);
+    /**
+     * 查询工作台全部数据，所有统计查询同时提交，总耗时接近最慢的一条查询
+     *
+     * @return
+     */
+    public WorkspaceOverViewVO getOverView() {
+        long deadline = newDeadline();
+        LocalDateTime begin = LocalDateTime.now().with(LocalTime.MIN);
+        LocalDateTime end = LocalDateTime.now().with(LocalTime.MAX);
 
-        //已取消
-        map.put("status", Orders.CANCELLED);
-        Integer cancelledOrders = orderMapper.countByMap(map);
+        CompletableFuture<BusinessDataVO> businessData = query(() -> getBusinessData(begin, end));
+        Supplier<OrderOverViewVO> orderOverView = orderOverView(deadline);
+        Supplier<DishOverViewVO> dishOverView = dishOverView(deadline);
+        Supplier<SetmealOverViewVO> setmealOverView = setmealOverView(deadline);
 
-        //全部订单
-        map.put("status", null);
-        Integer allOrders = orderMapper.countByMap(map);
-
-        return OrderOverViewVO.builder()
-                .waitingOrders(waitingOrders)
-                .deliveredOrders(deliveredOrders)
-                .completedOrders(completedOrders)
-                .cancelledOrders(cancelledOrders)
-                .allOrders(allOrders)
+        return WorkspaceOverViewVO.builder()
+                .businessData(join(businessData, deadline, BusinessDataVO.builder()
+                        .turnover(0.0)
+                        .validOrderCount(0)
+                        .orderCompletionRate(0.0)
+                        .unitPrice(0.0)
+                        .newUsers(0)
+                        .build()))
+                .orderOverView(orderOverView.get())
+                .dishOverView(dishOverView.get())
+                .setmealOverView(setmealOverView.get())
                 .build();
     }
 
     /**
-     * 查询菜品总览
-     *
+     * 提交订单管理数据的统计查询，返回的Supplier在截止时间前等待查询结果
+     * @param deadline
      * @return
      */
-    public DishOverViewVO getDishOverView() {
-        Map map = new HashMap();
-        map.put("status", StatusConstant.ENABLE);
-        Integer sold = dishMapper.countByMap(map);
+    private Supplier<OrderOverViewVO> orderOverView(long deadline) {
+        LocalDateTime begin = LocalDateTime.now().with(LocalTime.MIN);
 
-        map.put("status", StatusConstant.DISABLE);
-        Integer discontinued = dishMapper.countByMap(map);
+        //待接单
+        CompletableFuture<Integer> waitingOrders = query(() -> countOrders(begin, Orders.TO_BE_CONFIRMED));
+        //待派送
+        CompletableFuture<Integer> deliveredOrders = query(() -> countOrders(begin, Orders.CONFIRMED));
+        //已完成
+        CompletableFuture<Integer> completedOrders = query(() -> countOrders(begin, Orders.COMPLETED));
+        //已取消
+        CompletableFuture<Integer> cancelledOrders = query(() -> countOrders(begin, Orders.CANCELLED));
+        //全部订单
+        CompletableFuture<Integer> allOrders = query(() -> countOrders(begin, null));
 
-        return DishOverViewVO.builder()
-                .sold(sold)
-                .discontinued(discontinued)
+        return () -> OrderOverViewVO.builder()
+                .waitingOrders(join(waitingOrders, deadline, 0))
+                .deliveredOrders(join(deliveredOrders, deadline, 0))
+                .completedOrders(join(completedOrders, deadline, 0))
+                .cancelledOrders(join(cancelledOrders, deadline, 0))
+                .allOrders(join(allOrders, deadline, 0))
                 .build();
     }
 
     /**
-     * 查询套餐总览
-     *
+     * 提交菜品总览的统计查询
+     * @param deadline
      * @return
      */
-    public SetmealOverViewVO getSetmealOverView() {
-        Map map = new HashMap();
-        map.put("status", StatusConstant.ENABLE);
-        Integer sold = setmealMapper.countByMap(map);
+    private Supplier<DishOverViewVO> dishOverView(long deadline) {
+        CompletableFuture<Integer> sold = query(() -> dishMapper.countByMap(statusMap(StatusConstant.ENABLE)));
+        CompletableFuture<Integer> discontinued = query(() -> dishMapper.countByMap(statusMap(StatusConstant.DISABLE)));
 
-        map.put("status", StatusConstant.DISABLE);
-        Integer discontinued = setmealMapper.countByMap(map);
+        return () -> DishOverViewVO.builder()
+                .sold(join(sold, deadline, 0))
+                .discontinued(join(discontinued, deadline, 0))
+                .build();
+    }
 
-        return SetmealOverViewVO.builder()
-                .sold(sold)
-                .discontinued(discontinued)
+    /**
+     * 提交套餐总览的统计查询
+     * @param deadline
+     * @return
+     */
+    private Supplier<SetmealOverViewVO> setmealOverView(long deadline) {
+        CompletableFuture<Integer> sold = query(() -> setmealMapper.countByMap(statusMap(StatusConstant.ENABLE)));
+        CompletableFuture<Integer> discontinued = query(() -> setmealMapper.countByMap(statusMap(StatusConstant.DISABLE)));
+
+        return () -> SetmealOverViewVO.builder()
+                .sold(join(sold, deadline, 0))
+                .discontinued(join(discontinued, deadline, 0))
                 .build();
     }
-}
\ No newline at end of file
+
+    private Integer countOrders(LocalDateTime begin, Integer status) {
+        Map map = new HashMap();
+        map.put("begin", begin);
+        map.put("status", status);
+        return orderMapper.countByMap(map);
+    }
+
+    private Map statusMap(Integer status) {
+        Map map = new HashMap();
+        map.put("status", status);
+        return map;
+    }
+
+    /**
+     * 在统计查询线程池中执行查询
+     * future.cancel不能中止已开始执行的查询，由只读事务的超时时间限制查询在数据库中的执行时间
+     * @param supplier
+     * @param <T>
+     * @return
+     */
+    private <T> CompletableFuture<T> query(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> queryTransactionTemplate.execute(status -> supplier.get()), queryExecutor);
+    }
+
+    /**
+     * 本次请求所有统计查询的截止时间
+     * @return
+     */
+    private long newDeadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reportProperties.getWorkspaceQueryTimeout());
+    }
+
+    /**
+     * 在截止时间前等待查询结果，超时或查询失败时返回默认值，其他数据照常返回
+     * @param future
+     * @param deadline
+     * @param fallback
+     * @param <T>
+     * @return
+     */
+    private <T> T join(CompletableFuture<T> future, long deadline, T fallback) {
+        try {
+            T value = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return value == null ? fallback : value;
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            log.warn("工作台统计查询超时，返回默认值");
+            return fallback;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (ExecutionException e) {
+            log.error("工作台统计查询失败，返回默认值", e.getCause());
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.sky.task;
+
+import com.sky.service.ExportJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自定义定时任务，预先生成报表并清理过期的导出文件
+ */
+@Component
+@Slf4j
+public class ExportTask {
+    @Autowired
+    private ExportJobService exportJobService;
+
+    /**
+     * 每天凌晨3点（营业数据修正完之后）预先生成近30天的运营数据报表
+     */
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void prebuildBusinessData() {
+        exportJobService.prebuildDefault();
+    }
+
+    /**
+     * 每小时清理一次过期的导出任务和文件
+     */
+    @Scheduled(cron = "0 0 * * * ?")
+    public void cleanExpired() {
+        exportJobService.cleanExpired();
+    }
+}
@@ -1,9 +1,12 @@
 package com.sky.task;
 
+import com.sky.constant.MessageConstant;
 import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangedEvent;
 import com.sky.mapper.OrderMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -20,6 +23,8 @@ public class OrderTask {
     @Autowired
     private OrderMapper orderMapper;
 
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
 
     /**
      * 处理支付超时订单
@@ -33,12 +38,19 @@ public class OrderTask {
         List<Orders> ordersList = orderMapper.getByStatusAndOrderTime(Orders.PENDING_PAYMENT, time);
 
         if (ordersList != null && ordersList.size() > 0) {
-            ordersList.forEach(orders -> {
+            LocalDateTime cancelTime = LocalDateTime.now();
+            for (Orders orderDB : ordersList) {
+                Orders orders = new Orders();
+                orders.setId(orderDB.getId());
                 orders.setStatus(Orders.CANCELLED);
-                orders.setCancelReason("支付超时，自动取消");
-                orders.setCancelTime(LocalDateTime.now());
-                orderMapper.update(orders);
-            });
+                orders.setCancelReason(MessageConstant.ORDER_PAY_TIMEOUT);
+                orders.setCancelTime(cancelTime);
+//                只取消仍未支付的订单，查询后已支付的订单不会被覆盖
+//                取消后才收到的支付由对账任务退款
+                if (orderMapper.updateIfStatus(orders, Orders.PENDING_PAYMENT, Orders.UN_PAID) > 0) {
+                    applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(orderDB, Orders.CANCELLED));
+                }
+            }
         }
     }
 
@@ -54,10 +66,15 @@ public class OrderTask {
         List<Orders> ordersList = orderMapper.getByStatusAndOrderTime(Orders.DELIVERY_IN_PROGRESS, time);
 
         if (ordersList != null && ordersList.size() > 0) {
-            ordersList.forEach(orders -> {
+            for (Orders orderDB : ordersList) {
+                Orders orders = new Orders();
+                orders.setId(orderDB.getId());
                 orders.setStatus(Orders.COMPLETED);
-                orderMapper.update(orders);
-            });
+//                只修改仍在派送中的订单，查询后已被商家完成或取消的订单不会重复处理
+                if (orderMapper.updateIfStatus(orders, Orders.DELIVERY_IN_PROGRESS, null) > 0) {
+                    applicationEventPublisher.publishEvent(OrderStatusChangedEvent.of(orderDB, Orders.COMPLETED));
+                }
+            }
         }
     }
 }
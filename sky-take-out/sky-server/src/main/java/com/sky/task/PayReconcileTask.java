@@ -0,0 +1,109 @@
+package com.sky.task;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Orders;
+import com.sky.entity.RefundJob;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.RefundJobMapper;
+import com.sky.service.OrderService;
+import com.sky.service.PayNotifyService;
+import com.sky.service.RefundService;
+import com.sky.utils.WeChatPayUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 自定义定时任务，与微信支付对账，补齐丢失或未处理的支付、退款通知
+ */
+@Component
+@Slf4j
+public class PayReconcileTask {
+
+    //每次对账处理的最大记录数
+    private static final int BATCH_SIZE = 100;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private RefundJobMapper refundJobMapper;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private RefundService refundService;
+
+    @Autowired
+    private PayNotifyService payNotifyService;
+
+    @Autowired
+    private WeChatPayUtil weChatPayUtil;
+
+    /**
+     * 每隔5分钟核对一次支付结果未确定的订单
+     */
+    @Scheduled(cron = "0 0/5 * * * ?")
+    public void reconcilePayments() {
+        LocalDateTime now = LocalDateTime.now();
+
+//        一次查询出超过5分钟仍待付款的订单，以及最近10分钟内因支付超时被自动取消的订单
+        List<Orders> ordersList = orderMapper.listUnsettledPayments(
+                now.minusMinutes(5), now.minusMinutes(10), MessageConstant.ORDER_PAY_TIMEOUT, BATCH_SIZE);
+
+        for (Orders orders : ordersList) {
+            try {
+                JSONObject jsonObject = JSON.parseObject(weChatPayUtil.queryByOutTradeNo(orders.getNumber()));
+                if (jsonObject == null || !"SUCCESS".equals(jsonObject.getString("trade_state"))) {
+                    continue;
+                }
+
+                if (orders.getStatus().equals(Orders.PENDING_PAYMENT)) {
+//                    支付成功通知丢失，补做支付成功处理
+                    log.info("对账补处理支付成功：{}", orders.getNumber());
+                    orderService.paySuccess(orders.getNumber());
+                } else {
+//                    用户已支付但订单已超时取消，先写入退款任务再记录支付状态
+//                    写入退款任务失败时支付状态仍为未支付，下次对账会重新处理；退款任务按订单号去重，重复写入无影响
+                    log.info("对账发现超时取消的已支付订单，发起退款：{}", orders.getNumber());
+                    refundService.submit(orders);
+                    Orders paid = new Orders();
+                    paid.setId(orders.getId());
+                    paid.setPayStatus(Orders.PAID);
+                    orderMapper.update(paid);
+                }
+            } catch (Exception e) {
+                log.error("查询支付订单失败：{}", orders.getNumber(), e);
+            }
+        }
+    }
+
+    /**
+     * 每隔5分钟核对一次已提交但长时间未收到结果的退款
+     */
+    @Scheduled(cron = "30 0/5 * * * ?")
+    public void reconcileRefunds() {
+//        一次查询出提交超过10分钟仍未收到退款结果的任务
+        List<RefundJob> jobList = refundJobMapper.listSubmittedBefore(LocalDateTime.now().minusMinutes(10), BATCH_SIZE);
+
+        for (RefundJob job : jobList) {
+            try {
+                JSONObject jsonObject = JSON.parseObject(weChatPayUtil.queryRefund(job.getOutRefundNo()));
+                String status = jsonObject == null ? null : jsonObject.getString("status");
+                if (status != null && !"PROCESSING".equals(status)) {
+//                    与退款通知一样交给批量写入
+                    payNotifyService.submitRefundResult(job.getOutTradeNo(), job.getOutRefundNo(), status);
+                }
+            } catch (Exception e) {
+                log.error("查询退款失败：{}", job.getOutRefundNo(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.sky.task;
+
+import com.sky.service.PayNotifyService;
+import com.sky.service.RefundService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自定义定时任务，拉取到期的退款任务
+ */
+@Component
+@Slf4j
+public class RefundTask {
+    @Autowired
+    private RefundService refundService;
+
+    @Autowired
+    private PayNotifyService payNotifyService;
+
+    /**
+     * 每隔5秒拉取一次到期的退款任务
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void processRefundJobs() {
+        refundService.processDueJobs();
+    }
+
+    /**
+     * 每隔1秒将收到的退款结果批量写入数据库
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void flushRefundResults() {
+        payNotifyService.flushRefundResults();
+    }
+}
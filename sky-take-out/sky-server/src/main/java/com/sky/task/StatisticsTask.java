@@ -0,0 +1,46 @@
+package com.sky.task;
+
+import com.sky.analytics.OrderColumnStore;
+import com.sky.properties.ReportProperties;
+import com.sky.service.DailyStatisticsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * 自定义定时任务，修正每日营业数据汇总
+ */
+@Component
+@Slf4j
+public class StatisticsTask {
+
+    @Autowired
+    private DailyStatisticsService dailyStatisticsService;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
+    @Autowired
+    private OrderColumnStore orderColumnStore;
+
+    /**
+     * 每天凌晨2点30分（派送中订单处理完之后）根据原始数据重新计算最近几天的汇总数据
+     * 更早的日期已进入缓存，不再修正
+     */
+    @Scheduled(cron = "0 30 2 * * ?")
+    public void repairDailyStatistics() {
+        LocalDate end = LocalDate.now();
+        dailyStatisticsService.repair(end.minusDays(reportProperties.getMutableDays()), end);
+    }
+
+    /**
+     * 每天凌晨0点5分删除内存中超出保存天数的订单分析数据
+     */
+    @Scheduled(cron = "0 5 0 * * ?")
+    public void evictAnalytics() {
+        orderColumnStore.evictExpired();
+    }
+}
@@ -0,0 +1,30 @@
+package com.sky.task;
+
+import com.sky.service.TokenRevocationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自定义定时任务，同步令牌吊销记录
+ */
+@Component
+@Slf4j
+public class TokenRevocationTask {
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    /**
+     * 定期从redis全量同步吊销记录，弥补节点断开订阅期间丢失的通知
+     */
+    @Scheduled(fixedDelayString = "${sky.jwt.revocation-sync-interval:60000}")
+    public void syncRevocations() {
+        try {
+            tokenRevocationService.sync();
+        } catch (Exception e) {
+            log.warn("同步令牌吊销记录失败：{}", e.getMessage());
+        }
+    }
+}
@@ -1,23 +1,32 @@
 package com.sky.task;
 
+import com.sky.service.DashboardService;
 import com.sky.websocket.WebSocketServer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-
 @Component
 public class WebSocketTask {
     @Autowired
     private WebSocketServer webSocketServer;
 
+    @Autowired
+    private DashboardService dashboardService;
+
+    /**
+     * WebSocket心跳，定期向客户端发送ping并断开长时间无响应的连接
+     */
+    @Scheduled(fixedDelayString = "${sky.websocket.heartbeat-interval:30000}")
+    public void heartbeat() {
+        webSocketServer.heartbeat();
+    }
+
     /**
-     * 通过WebSocket每隔5秒向客户端发送消息
+     * 推送工作台实时指标的增量
      */
-    @Scheduled(cron = "0/5 * * * * ?")
-    public void sendMessageToClient() {
-        webSocketServer.sendToAllClient("这是来自服务端的消息：" + DateTimeFormatter.ofPattern("HH:mm:ss").format(LocalDateTime.now()));
+    @Scheduled(fixedDelayString = "${sky.report.dashboard-push-interval:3000}")
+    public void pushDashboard() {
+        dashboardService.pushChanges();
     }
-}
\ No newline at end of file
+}
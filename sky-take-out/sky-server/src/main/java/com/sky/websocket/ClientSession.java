@@ -0,0 +1,186 @@
+package com.sky.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端会话，每个会话一个有界的待发送队列
+ * 同一时刻只有一条消息通过异步发送在途，发送完成后再发送队列中的下一条；
+ * 队列满时丢弃最早的消息，在途消息超过发送超时仍未完成时认为是慢客户端，直接断开连接
+ */
+@Slf4j
+public class ClientSession {
+
+    private static final byte[] PING = "ping".getBytes(StandardCharsets.UTF_8);
+
+    private final String sid;
+    private final Session session;
+    private final int capacity;
+    private final long sendTimeout;
+
+    //建立连接时通过管理端令牌校验的员工id，未登录的客户端为null
+    private final Long empId;
+
+    //订阅的主题
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+
+    //最近一次收到客户端消息（包括pong）的时间
+    private volatile long lastActive = System.currentTimeMillis();
+
+    //以下字段由this保护
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private boolean sending;
+    private long sendStartedAt;
+    private boolean closed;
+    private long dropped;
+
+    public ClientSession(String sid, Session session, Long empId, int capacity, long sendTimeout) {
+        this.sid = sid;
+        this.session = session;
+        this.empId = empId;
+        this.capacity = capacity;
+        this.sendTimeout = sendTimeout;
+    }
+
+    public String getSid() {
+        return sid;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public Long getEmpId() {
+        return empId;
+    }
+
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    public long getLastActive() {
+        return lastActive;
+    }
+
+    /**
+     * 记录客户端活跃
+     */
+    public void touch() {
+        lastActive = System.currentTimeMillis();
+    }
+
+    /**
+     * 发送心跳ping，有消息正在发送时跳过，避免与数据帧并发写入
+     */
+    public void ping() {
+        synchronized (this) {
+            if (closed || sending) {
+                return;
+            }
+        }
+        try {
+            session.getAsyncRemote().sendPing(ByteBuffer.wrap(PING));
+        } catch (IllegalStateException e) {
+            //检查之后恰好开始发送数据帧，本轮跳过
+        } catch (Exception e) {
+            log.warn("向客户端{}发送心跳失败：{}", sid, e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * 消息入队，不阻塞调用线程
+     * @param message
+     */
+    public void send(String message) {
+        String next;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (sending && System.currentTimeMillis() - sendStartedAt > sendTimeout) {
+                log.warn("客户端{}发送超时，断开慢客户端，队列中积压{}条消息", sid, queue.size());
+                closed = true;
+                queue.clear();
+                next = null;
+            } else {
+                if (queue.size() >= capacity) {
+                    queue.pollFirst();
+                    dropped++;
+                    if (dropped % capacity == 1) {
+                        log.warn("客户端{}消息积压，已丢弃{}条最早的消息", sid, dropped);
+                    }
+                }
+                queue.offerLast(message);
+                if (sending) {
+                    return;
+                }
+                next = queue.pollFirst();
+                sending = true;
+                sendStartedAt = System.currentTimeMillis();
+            }
+        }
+        if (next == null) {
+            closeSession(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer");
+            return;
+        }
+        doSend(next);
+    }
+
+    private void doSend(String message) {
+        try {
+            session.getAsyncRemote().sendText(message, result -> {
+                if (!result.isOK()) {
+                    log.warn("向客户端{}发送消息失败：{}", sid, result.getException().getMessage());
+                    close();
+                    return;
+                }
+                String next;
+                synchronized (this) {
+                    next = closed ? null : queue.pollFirst();
+                    if (next == null) {
+                        sending = false;
+                        return;
+                    }
+                    sendStartedAt = System.currentTimeMillis();
+                }
+                doSend(next);
+            });
+        } catch (Exception e) {
+            log.warn("向客户端{}发送消息失败：{}", sid, e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * 关闭会话并丢弃待发送的消息
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+        }
+        closeSession(CloseReason.CloseCodes.GOING_AWAY, "closed");
+    }
+
+    private void closeSession(CloseReason.CloseCode code, String reason) {
+        try {
+            if (session.isOpen()) {
+                session.close(new CloseReason(code, reason));
+            }
+        } catch (IOException e) {
+            log.debug("关闭客户端{}连接失败：{}", sid, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.sky.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 节点之间通过redis转发的WebSocket消息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClusterMessage {
+
+    //消息id，用于去重
+    private String id;
+
+    //发送消息的节点
+    private String node;
+
+    //目标客户端sid，为空表示按主题或群发
+    private String sid;
+
+    //目标主题，sid和topic都为空表示群发
+    private String topic;
+
+    //主题消息的序号，用于重连补发
+    private long seq;
+
+    //推送给客户端的消息内容
+    private String payload;
+
+}
@@ -0,0 +1,63 @@
+package com.sky.websocket;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 主题消息的重放缓冲区，按序号保存最近capacity条消息
+ * 客户端断线重连时携带最后收到的序号，补发之后的消息
+ */
+public class ReplayBuffer {
+
+    private final long[] seqs;
+    private final String[] payloads;
+    private int head;
+    private int size;
+
+    //已被覆盖的消息中最大的序号
+    private long evictedSeq;
+
+    public ReplayBuffer(int capacity) {
+        this.seqs = new long[capacity];
+        this.payloads = new String[capacity];
+    }
+
+    public synchronized void add(long seq, String payload) {
+        int index = (head + size) % seqs.length;
+        if (size == seqs.length) {
+            evictedSeq = Math.max(evictedSeq, seqs[head]);
+            head = (head + 1) % seqs.length;
+        } else {
+            size++;
+        }
+        seqs[index] = seq;
+        payloads[index] = payload;
+    }
+
+    /**
+     * 序号大于lastSeq的消息，按序号从小到大
+     * @param lastSeq
+     * @return 序号 -> 消息内容
+     */
+    public synchronized List<Map.Entry<Long, String>> since(long lastSeq) {
+        List<Map.Entry<Long, String>> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % seqs.length;
+            if (seqs[index] > lastSeq) {
+                result.add(new AbstractMap.SimpleImmutableEntry<>(seqs[index], payloads[index]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * lastSeq之后的消息是否有部分已被覆盖，无法完整补发
+     * @param lastSeq
+     * @return
+     */
+    public synchronized boolean hasGap(long lastSeq) {
+        return evictedSeq > lastSeq;
+    }
+}
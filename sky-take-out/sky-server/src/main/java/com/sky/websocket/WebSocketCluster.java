@@ -0,0 +1,221 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.constant.WebSocketConstant;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket集群消息转发
+ * 群发消息先投递给本节点的会话，再发布到redis群发频道，其他节点收到后投递给各自的会话；
+ * 定向消息根据redis中的会话目录找到客户端所在节点，发布到该节点的频道
+ */
+@Component
+@Slf4j
+public class WebSocketCluster implements MessageListener, DisposableBean {
+
+    private static final String COALESCE_KEY_PREFIX = "ws:coalesce:";
+
+    //当前节点id，每次启动重新生成
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName()
+            + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    //最近处理过的消息id，用于去重
+    private final Set<String> recentIds = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > 10000;
+                }
+            }));
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 当前节点订阅的频道
+     * @return
+     */
+    public String getNodeChannel() {
+        return webSocketProperties.getNodeChannelPrefix() + nodeId;
+    }
+
+    /**
+     * 向集群中所有客户端群发
+     * @param payload
+     */
+    public void broadcast(String payload) {
+        ClusterMessage message = new ClusterMessage(UUID.randomUUID().toString(), nodeId, null, null, 0, payload);
+        recentIds.add(message.getId());
+        WebSocketServer.deliverLocal(payload);
+        publish(webSocketProperties.getBroadcastChannel(), message);
+    }
+
+    /**
+     * 向指定客户端发送，客户端可以连接在集群中的任意节点
+     * @param sid
+     * @param payload
+     */
+    public void sendTo(String sid, String payload) {
+        if (WebSocketServer.deliverLocal(sid, payload)) {
+            return;
+        }
+        String node = (String) stringRedisTemplate.opsForHash().get(webSocketProperties.getSessionDirectoryKey(), sid);
+        if (node == null) {
+            log.debug("客户端{}不在线，消息未发送", sid);
+            return;
+        }
+        ClusterMessage message = new ClusterMessage(UUID.randomUUID().toString(), nodeId, sid, null, 0, payload);
+        long receivers = publish(webSocketProperties.getNodeChannelPrefix() + node, message);
+        if (receivers == 0) {
+            //目标节点已下线，清理会话目录中的过期记录
+            log.info("客户端{}所在节点{}已下线，移除会话目录记录", sid, node);
+            unregister(sid, node);
+        }
+    }
+
+    /**
+     * 向集群中订阅了指定主题的客户端发送
+     * @param topic
+     * @param seq 消息序号，由nextSeq生成
+     * @param payload
+     */
+    public void publishTopic(String topic, long seq, String payload) {
+        if (topic.startsWith(WebSocketConstant.TOPIC_SID_PREFIX)) {
+            //单个客户端的主题，直接定向发送到所在节点
+            sendTo(topic.substring(WebSocketConstant.TOPIC_SID_PREFIX.length()), payload);
+            return;
+        }
+        ClusterMessage message = new ClusterMessage(UUID.randomUUID().toString(), nodeId, null, topic, seq, payload);
+        recentIds.add(message.getId());
+        WebSocketServer.deliverTopic(topic, seq, payload);
+        publish(webSocketProperties.getBroadcastChannel(), message);
+    }
+
+    /**
+     * 生成主题消息的序号，集群内递增
+     * @return redis不可用时返回0，该消息不参与重连补发
+     */
+    public long nextSeq() {
+        try {
+            Long seq = stringRedisTemplate.opsForValue().increment(webSocketProperties.getSeqKey());
+            return seq == null ? 0 : seq;
+        } catch (Exception e) {
+            log.warn("生成WebSocket消息序号失败：{}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 消息合并：同一合并键在合并窗口内只有第一条消息需要推送，窗口在集群内共享
+     * @param coalesceKey
+     * @return 需要推送时返回true
+     */
+    public boolean tryCoalesce(String coalesceKey) {
+        try {
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(COALESCE_KEY_PREFIX + coalesceKey, nodeId,
+                    webSocketProperties.getCoalesceWindow(), TimeUnit.MILLISECONDS);
+            return !Boolean.FALSE.equals(first);
+        } catch (Exception e) {
+            //redis不可用时不合并，保证消息能推送
+            log.warn("WebSocket消息合并失败：{}", e.getMessage());
+            return true;
+        }
+    }
+
+    private long publish(String channel, ClusterMessage message) {
+        try {
+            byte[] channelBytes = channel.getBytes(StandardCharsets.UTF_8);
+            byte[] body = JSON.toJSONString(message).getBytes(StandardCharsets.UTF_8);
+            Long receivers = stringRedisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channelBytes, body));
+            return receivers == null ? 0 : receivers;
+        } catch (Exception e) {
+            log.warn("发布WebSocket集群消息失败：{}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 收到其他节点转发的消息，投递给本节点的会话
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        ClusterMessage clusterMessage = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8), ClusterMessage.class);
+        if (clusterMessage == null || nodeId.equals(clusterMessage.getNode()) || !recentIds.add(clusterMessage.getId())) {
+            return;
+        }
+        if (clusterMessage.getSid() != null) {
+            WebSocketServer.deliverLocal(clusterMessage.getSid(), clusterMessage.getPayload());
+        } else if (clusterMessage.getTopic() != null) {
+            WebSocketServer.deliverTopic(clusterMessage.getTopic(), clusterMessage.getSeq(), clusterMessage.getPayload());
+        } else {
+            WebSocketServer.deliverLocal(clusterMessage.getPayload());
+        }
+    }
+
+    /**
+     * 在会话目录中登记客户端所在的节点
+     * @param sid
+     */
+    public void register(String sid) {
+        try {
+            stringRedisTemplate.opsForHash().put(webSocketProperties.getSessionDirectoryKey(), sid, nodeId);
+        } catch (Exception e) {
+            log.warn("登记WebSocket会话失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从会话目录中移除客户端，只移除登记在当前节点的记录
+     * @param sid
+     */
+    public void unregister(String sid) {
+        unregister(sid, nodeId);
+    }
+
+    private void unregister(String sid, String node) {
+        try {
+            String key = webSocketProperties.getSessionDirectoryKey();
+            if (node.equals(stringRedisTemplate.opsForHash().get(key, sid))) {
+                stringRedisTemplate.opsForHash().delete(key, sid);
+            }
+        } catch (Exception e) {
+            log.warn("移除WebSocket会话失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 节点停止时移除本节点登记的所有会话
+     */
+    @Override
+    public void destroy() {
+        for (String sid : WebSocketServer.localSids()) {
+            unregister(sid);
+        }
+    }
+}
@@ -1,33 +1,161 @@
 package com.sky.websocket;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.constant.WebSocketConstant;
+import com.sky.interceptor.JwtTokenAdminInterceptor;
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.PongMessage;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * WebSocket服务
+ * 端点实例由WebSocket容器按连接创建，会话表和配置需要是静态的，由Spring管理的实例注入
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
     //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    private static final Map<String, ClientSession> sessionMap = new ConcurrentHashMap<>();
+
+    //主题 -> 订阅该主题的本节点会话
+    private static final Map<String, Set<ClientSession>> topicMap = new ConcurrentHashMap<>();
+
+    //主题 -> 最近的主题消息，用于重连补发
+    private static final Map<String, ReplayBuffer> replayMap = new ConcurrentHashMap<>();
+
+    private static WebSocketProperties webSocketProperties = new WebSocketProperties();
+
+    private static Executor broadcastExecutor;
+
+    private static WebSocketCluster webSocketCluster;
+
+    private static JwtTokenAdminInterceptor jwtTokenAdminInterceptor;
+
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        WebSocketServer.webSocketProperties = webSocketProperties;
+    }
+
+    @Autowired
+    public void setBroadcastExecutor(@Qualifier("wsExecutor") Executor broadcastExecutor) {
+        WebSocketServer.broadcastExecutor = broadcastExecutor;
+    }
+
+    @Autowired
+    public void setWebSocketCluster(WebSocketCluster webSocketCluster) {
+        WebSocketServer.webSocketCluster = webSocketCluster;
+    }
+
+    @Autowired
+    public void setJwtTokenAdminInterceptor(JwtTokenAdminInterceptor jwtTokenAdminInterceptor) {
+        WebSocketServer.jwtTokenAdminInterceptor = jwtTokenAdminInterceptor;
+    }
 
     /**
      * 连接建立成功调用的方法
+     * 浏览器建立WebSocket连接时不能设置请求头，管理端令牌通过连接参数token传递，校验通过后才能订阅管理端主题
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        List<String> tokens = session.getRequestParameterMap().get("token");
+        Long empId = tokens == null || tokens.isEmpty() ? null : jwtTokenAdminInterceptor.authenticate(tokens.get(0));
+        log.info("客户端：{}建立连接，员工id：{}", sid, empId);
+        session.getAsyncRemote().setSendTimeout(webSocketProperties.getSendTimeout());
+        ClientSession clientSession = new ClientSession(sid, session, empId,
+                webSocketProperties.getSendQueueCapacity(), webSocketProperties.getSendTimeout());
+        ClientSession old = sessionMap.put(sid, clientSession);
+        if (old != null) {
+            //同一客户端重复连接，关闭旧连接
+            old.close();
+            unsubscribeAll(old);
+        }
+
+        //订阅、补发和登记会话目录在群发线程中执行，与主题消息的投递串行，补发的消息和实时消息不会交错
+        List<String> topics = session.getRequestParameterMap().get("topics");
+        long lastSeq = parseLastSeq(session.getRequestParameterMap().get("lastSeq"));
+        broadcastExecutor.execute(() -> {
+            if (sessionMap.get(sid) != clientSession) {
+                return;
+            }
+            //订阅连接参数topics中指定的主题（多个用逗号分隔），未指定时订阅默认主题
+            if (topics == null || topics.isEmpty()) {
+                webSocketProperties.getDefaultTopics().forEach(topic -> subscribe(clientSession, topic));
+            } else {
+                topics.forEach(value -> Arrays.stream(value.split(","))
+                        .map(String::trim)
+                        .filter(topic -> !topic.isEmpty())
+                        .forEach(topic -> subscribe(clientSession, topic)));
+            }
+            subscribe(clientSession, WebSocketConstant.TOPIC_SID_PREFIX + sid);
+
+            //重连时补发lastSeq之后的主题消息
+            if (lastSeq > 0) {
+                replay(clientSession, lastSeq);
+            }
+
+            //在集群会话目录中登记，其他节点可以向该客户端定向发送
+            webSocketCluster.register(sid);
+        });
+    }
+
+    private static long parseLastSeq(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(values.get(0));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 补发会话订阅的主题中序号大于lastSeq的消息，按序号从小到大
+     * 部分消息已被覆盖时先发送重新同步通知，客户端需要重新查询订单列表
+     * @param clientSession
+     * @param lastSeq
+     */
+    private static void replay(ClientSession clientSession, long lastSeq) {
+        List<Map.Entry<Long, String>> missed = new ArrayList<>();
+        boolean gap = false;
+        for (String topic : clientSession.getTopics()) {
+            ReplayBuffer buffer = replayMap.get(topic);
+            if (buffer == null) {
+                continue;
+            }
+            gap |= buffer.hasGap(lastSeq);
+            missed.addAll(buffer.since(lastSeq));
+        }
+        if (gap) {
+            Map<String, Object> resync = new HashMap<>();
+            resync.put("type", WebSocketConstant.TYPE_RESYNC);
+            clientSession.send(JSON.toJSONString(resync));
+        }
+        missed.sort(Map.Entry.comparingByKey());
+        log.info("客户端：{}重连，补发{}条消息", clientSession.getSid(), missed.size());
+        missed.forEach(entry -> clientSession.send(entry.getValue()));
     }
 
     /**
@@ -37,7 +165,50 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
+        ClientSession clientSession = sessionMap.get(sid);
+        if (clientSession == null) {
+            return;
+        }
+        clientSession.touch();
+        JSONObject jsonObject = parse(message);
+        if (jsonObject == null) {
+            return;
+        }
+
+        //订阅、取消订阅主题：{"action":"subscribe","topics":["shop:1"]}
+        String action = jsonObject.getString("action");
+        JSONArray topics = jsonObject.getJSONArray("topics");
+        if (topics == null) {
+            return;
+        }
+        if ("subscribe".equals(action)) {
+            topics.forEach(topic -> subscribe(clientSession, String.valueOf(topic)));
+        } else if ("unsubscribe".equals(action)) {
+            topics.forEach(topic -> unsubscribe(clientSession, String.valueOf(topic)));
+        }
+    }
+
+    /**
+     * 收到客户端对心跳ping的响应
+     *
+     * @param pong
+     * @param sid
+     */
+    @OnMessage
+    public void onPong(PongMessage pong, @PathParam("sid") String sid) {
+        ClientSession clientSession = sessionMap.get(sid);
+        if (clientSession != null) {
+            clientSession.touch();
+        }
+    }
+
+    private static JSONObject parse(String message) {
+        try {
+            return JSON.parseObject(message);
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     /**
@@ -46,25 +217,221 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        remove(sid, session);
     }
 
     /**
-     * 群发
+     * 连接异常调用的方法
+     *
+     * @param session
+     * @param sid
+     * @param error
+     */
+    @OnError
+    public void onError(Session session, @PathParam("sid") String sid, Throwable error) {
+        log.warn("客户端：{}连接异常：{}", sid, error.getMessage());
+        remove(sid, session);
+    }
+
+    /**
+     * 移除会话，只移除属于该连接的会话，不影响同一sid重连后的新会话
+     * 关闭连接会同步触发onClose再次进入该方法，因此先从map中移除再关闭，关闭连接不在map的原子操作中执行
+     * @param sid
+     * @param session
+     */
+    private static void remove(String sid, Session session) {
+        ClientSession clientSession = sessionMap.get(sid);
+        if (clientSession == null || clientSession.getSession() != session || !sessionMap.remove(sid, clientSession)) {
+            return;
+        }
+        clientSession.close();
+        unsubscribeAll(clientSession);
+        broadcastExecutor.execute(() -> {
+            //排队期间客户端可能已重新连接到本节点
+            if (!sessionMap.containsKey(sid)) {
+                webSocketCluster.unregister(sid);
+            }
+        });
+    }
+
+    /**
+     * 会话订阅主题
+     * @param clientSession
+     * @param topic
+     */
+    private static void subscribe(ClientSession clientSession, String topic) {
+        if (!canSubscribe(clientSession, topic)) {
+            log.warn("客户端：{}无权订阅主题：{}", clientSession.getSid(), topic);
+            return;
+        }
+        clientSession.getTopics().add(topic);
+        topicMap.compute(topic, (key, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+            }
+            sessions.add(clientSession);
+            return sessions;
+        });
+    }
+
+    /**
+     * 管理端主题只有通过令牌校验的会话可以订阅，单个客户端的主题只有该客户端自己可以订阅
+     * @param clientSession
+     * @param topic
+     * @return
+     */
+    private static boolean canSubscribe(ClientSession clientSession, String topic) {
+        if (topic.startsWith(WebSocketConstant.TOPIC_SID_PREFIX)) {
+            return topic.equals(WebSocketConstant.TOPIC_SID_PREFIX + clientSession.getSid());
+        }
+        if (clientSession.getEmpId() != null) {
+            return true;
+        }
+        return webSocketProperties.getAdminTopics().stream().noneMatch(topic::startsWith);
+    }
+
+    /**
+     * 会话取消订阅主题，主题没有订阅者后移除
+     * @param clientSession
+     * @param topic
+     */
+    private static void unsubscribe(ClientSession clientSession, String topic) {
+        clientSession.getTopics().remove(topic);
+        topicMap.computeIfPresent(topic, (key, sessions) -> {
+            sessions.remove(clientSession);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    private static void unsubscribeAll(ClientSession clientSession) {
+        for (String topic : clientSession.getTopics()) {
+            unsubscribe(clientSession, topic);
+        }
+    }
+
+    /**
+     * 群发，集群中所有节点上的客户端都会收到
+     * 在独立的线程中把消息放入各会话的发送队列并发布到其他节点，不阻塞调用方（如支付回调、催单请求）
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+        broadcastExecutor.execute(() -> webSocketCluster.broadcast(message));
+    }
+
+    /**
+     * 向指定客户端发送，客户端可以连接在集群中的任意节点
+     *
+     * @param sid
+     * @param message
+     */
+    public void sendToClient(String sid, String message) {
+        broadcastExecutor.execute(() -> webSocketCluster.sendTo(sid, message));
+    }
+
+    /**
+     * 向集群中订阅了指定主题的客户端发送，消息只序列化一次
+     *
+     * @param topic
+     * @param message
+     */
+    public void sendToTopic(String topic, Object message) {
+        sendToTopic(topic, message, null);
+    }
+
+    /**
+     * 向集群中订阅了指定主题的客户端发送，相同合并键的消息在合并窗口内只推送第一条
+     * 用于合并突发的同类事件，例如同一订单短时间内的多次催单
+     *
+     * @param topic
+     * @param message
+     * @param coalesceKey 合并键，为空时不合并
+     */
+    public void sendToTopic(String topic, Object message, String coalesceKey) {
+        broadcastExecutor.execute(() -> {
+            if (coalesceKey != null && !webSocketCluster.tryCoalesce(coalesceKey)) {
+                log.debug("合并WebSocket消息：{}", coalesceKey);
+                return;
+            }
+            //消息中附带序号，客户端重连时通过lastSeq参数获取之后的消息
+            long seq = webSocketCluster.nextSeq();
+            JSONObject body = message instanceof String ? JSON.parseObject((String) message) : (JSONObject) JSON.toJSON(message);
+            body.put("seq", seq);
+            webSocketCluster.publishTopic(topic, seq, body.toJSONString());
+        });
+    }
+
+    /**
+     * 投递给本节点上订阅了指定主题的会话，并保存到该主题的重放缓冲区
+     *
+     * @param topic
+     * @param seq
+     * @param message
+     */
+    static void deliverTopic(String topic, long seq, String message) {
+        if (seq > 0) {
+            replayMap.computeIfAbsent(topic, key -> new ReplayBuffer(webSocketProperties.getReplayCapacity()))
+                    .add(seq, message);
+        }
+        Set<ClientSession> sessions = topicMap.get(topic);
+        if (sessions == null) {
+            return;
+        }
+        for (ClientSession clientSession : sessions) {
+            clientSession.send(message);
+        }
+    }
+
+    /**
+     * 投递给本节点的所有会话
+     *
+     * @param message
+     */
+    static void deliverLocal(String message) {
+        for (ClientSession clientSession : sessionMap.values()) {
+            clientSession.send(message);
+        }
+    }
+
+    /**
+     * 投递给本节点上的指定会话
+     *
+     * @param sid
+     * @param message
+     * @return 客户端不在本节点时返回false
+     */
+    static boolean deliverLocal(String sid, String message) {
+        ClientSession clientSession = sessionMap.get(sid);
+        if (clientSession == null) {
+            return false;
+        }
+        clientSession.send(message);
+        return true;
+    }
+
+    /**
+     * 心跳：向本节点的客户端发送ping，断开超过空闲时间未响应的连接
+     */
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (ClientSession clientSession : sessionMap.values()) {
+            if (now - clientSession.getLastActive() > webSocketProperties.getIdleTimeout()) {
+                log.info("客户端：{}心跳超时，断开连接", clientSession.getSid());
+                remove(clientSession.getSid(), clientSession.getSession());
+                continue;
             }
+            clientSession.ping();
         }
     }
+
+    /**
+     * 本节点上所有客户端的sid
+     *
+     * @return
+     */
+    static Set<String> localSids() {
+        return sessionMap.keySet();
+    }
 }
@@ -0,0 +1,114 @@
+-- 苍穹外卖 数据库增量脚本，按顺序执行
+
+-- 退款任务表：拒单、取消订单时写入，由后台工作线程异步调用微信支付退款接口
+CREATE TABLE IF NOT EXISTS `refund_job`
+(
+    `id`              bigint         NOT NULL AUTO_INCREMENT COMMENT '主键',
+    `order_id`        bigint         NOT NULL COMMENT '订单id',
+    `out_trade_no`    varchar(50)    NOT NULL COMMENT '商户订单号',
+    `out_refund_no`   varchar(64)    NOT NULL COMMENT '商户退款单号',
+    `refund_amount`   decimal(10, 2) NOT NULL COMMENT '退款金额',
+    `total_amount`    decimal(10, 2) NOT NULL COMMENT '原订单金额',
+    `status`          int            NOT NULL DEFAULT 0 COMMENT '状态 0待处理 1处理中 2已提交 3退款成功 4退款失败',
+    `attempts`        int            NOT NULL DEFAULT 0 COMMENT '已尝试次数',
+    `next_retry_time` datetime       NOT NULL COMMENT '下次执行时间',
+    `refund_id`       varchar(64)             DEFAULT NULL COMMENT '微信支付退款单号',
+    `last_error`      varchar(500)            DEFAULT NULL COMMENT '最近一次失败原因',
+    `create_time`     datetime                DEFAULT NULL COMMENT '创建时间',
+    `update_time`     datetime                DEFAULT NULL COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_out_refund_no` (`out_refund_no`),
+    KEY `idx_status_next_retry_time` (`status`, `next_retry_time`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4 COMMENT ='退款任务';
+
+-- 每日营业数据汇总表：订单状态变更、用户注册时增量更新，每晚由定时任务按原始数据修正
+CREATE TABLE IF NOT EXISTS `daily_business_stats`
+(
+    `stat_date`                  date           NOT NULL COMMENT '统计日期（下单日期）',
+    `turnover`                   decimal(12, 2) NOT NULL DEFAULT 0 COMMENT '营业额（已完成订单金额）',
+    `order_count`                int            NOT NULL DEFAULT 0 COMMENT '订单总数',
+    `valid_order_count`          int            NOT NULL DEFAULT 0 COMMENT '有效订单数（已完成）',
+    `new_users`                  int            NOT NULL DEFAULT 0 COMMENT '新增用户数',
+    `pending_payment_count`      int            NOT NULL DEFAULT 0 COMMENT '待付款订单数',
+    `to_be_confirmed_count`      int            NOT NULL DEFAULT 0 COMMENT '待接单订单数',
+    `confirmed_count`            int            NOT NULL DEFAULT 0 COMMENT '已接单订单数',
+    `delivery_in_progress_count` int            NOT NULL DEFAULT 0 COMMENT '派送中订单数',
+    `completed_count`            int            NOT NULL DEFAULT 0 COMMENT '已完成订单数',
+    `cancelled_count`            int            NOT NULL DEFAULT 0 COMMENT '已取消订单数',
+    `update_time`                datetime                DEFAULT NULL COMMENT '更新时间',
+    PRIMARY KEY (`stat_date`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4 COMMENT ='每日营业数据汇总';
+
+-- 每日商品销量汇总表：只统计已完成订单
+CREATE TABLE IF NOT EXISTS `daily_dish_sales`
+(
+    `stat_date` date           NOT NULL COMMENT '统计日期（下单日期）',
+    `name`      varchar(32)    NOT NULL COMMENT '商品名称',
+    `number`    int            NOT NULL DEFAULT 0 COMMENT '销量',
+    `amount`    decimal(12, 2) NOT NULL DEFAULT 0 COMMENT '销售额',
+    PRIMARY KEY (`stat_date`, `name`)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4 COMMENT ='每日商品销量汇总';
+
+-- 根据历史数据初始化汇总表
+INSERT INTO `daily_business_stats`
+(`stat_date`, `turnover`, `order_count`, `valid_order_count`, `pending_payment_count`, `to_be_confirmed_count`,
+ `confirmed_count`, `delivery_in_progress_count`, `completed_count`, `cancelled_count`, `update_time`)
+SELECT DATE(order_time),
+       sum(case when status = 5 then amount else 0 end),
+       count(id),
+       sum(case when status = 5 then 1 else 0 end),
+       sum(case when status = 1 then 1 else 0 end),
+       sum(case when status = 2 then 1 else 0 end),
+       sum(case when status = 3 then 1 else 0 end),
+       sum(case when status = 4 then 1 else 0 end),
+       sum(case when status = 5 then 1 else 0 end),
+       sum(case when status = 6 then 1 else 0 end),
+       now()
+FROM orders
+GROUP BY DATE(order_time)
+ON DUPLICATE KEY UPDATE `turnover`                   = values(`turnover`),
+                        `order_count`                = values(`order_count`),
+                        `valid_order_count`          = values(`valid_order_count`),
+                        `pending_payment_count`      = values(`pending_payment_count`),
+                        `to_be_confirmed_count`      = values(`to_be_confirmed_count`),
+                        `confirmed_count`            = values(`confirmed_count`),
+                        `delivery_in_progress_count` = values(`delivery_in_progress_count`),
+                        `completed_count`            = values(`completed_count`),
+                        `cancelled_count`            = values(`cancelled_count`),
+                        `update_time`                = values(`update_time`);
+
+INSERT INTO `daily_business_stats` (`stat_date`, `new_users`, `update_time`)
+SELECT DATE(create_time), count(id), now()
+FROM user
+WHERE create_time IS NOT NULL
+GROUP BY DATE(create_time)
+ON DUPLICATE KEY UPDATE `new_users` = values(`new_users`), `update_time` = values(`update_time`);
+
+INSERT INTO `daily_dish_sales` (`stat_date`, `name`, `number`, `amount`)
+SELECT DATE(o.order_time), od.name, sum(od.number), sum(od.amount * od.number)
+FROM order_detail od,
+     orders o
+WHERE od.order_id = o.id
+  AND o.status = 5
+GROUP BY DATE(o.order_time), od.name
+ON DUPLICATE KEY UPDATE `number` = values(`number`), `amount` = values(`amount`);
+
+-- 商品销量汇总记录菜品、套餐id，用于用户端按热度排序
+ALTER TABLE `daily_dish_sales`
+    ADD COLUMN `dish_id`    bigint DEFAULT NULL COMMENT '菜品id' AFTER `name`,
+    ADD COLUMN `setmeal_id` bigint DEFAULT NULL COMMENT '套餐id' AFTER `dish_id`;
+
+UPDATE `daily_dish_sales` s
+    JOIN (SELECT name, max(dish_id) dish_id, max(setmeal_id) setmeal_id FROM order_detail GROUP BY name) od
+    ON s.name = od.name
+SET s.dish_id    = od.dish_id,
+    s.setmeal_id = od.setmeal_id;
+
+-- 订单按下单时间范围导出、统计，明细按订单id关联
+ALTER TABLE `orders`
+    ADD INDEX `idx_order_time` (`order_time`);
+ALTER TABLE `order_detail`
+    ADD INDEX `idx_order_id` (`order_id`);